@@ -0,0 +1,102 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one resolver shared by several threads, with and without a thread changing records meanwhile. The
+ * writer replaces one record at a time, cycling through a few addresses, so the store keeps the same size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ContentionBenchmark {
+    @Param({"1000", "100000"})
+    public int records;
+
+    private static final int WRITER_ADDRESSES = 16;
+
+    private FakeResolver resolver;
+    private Message hit;
+    private Record[] writerRecords;
+    private int writes;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.setRecords(Fixtures.hosts(records));
+        hit = StubResolver.newQuery("host" + (records / 2) + "." + Fixtures.DOMAIN);
+        Name writerName = Name.fromString("writer." + Fixtures.DOMAIN);
+        writerRecords = new Record[WRITER_ADDRESSES];
+        for (int i = 0; i < WRITER_ADDRESSES; i++) {
+            writerRecords[i] = new ARecord(writerName, DClass.IN, 60L,
+                    InetAddress.getByAddress(new byte[]{(byte) 192, 0, 2, (byte) (i + 1)}));
+        }
+        writes = 0;
+        resolver.addRecord(writerRecords[0]);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public Message readOnlyReaders() throws IOException {
+        return resolver.send(hit);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(4)
+    public Message readWriteReaders() throws IOException {
+        return resolver.send(hit);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteWriter() {
+        Record old = writerRecords[writes % WRITER_ADDRESSES];
+        Record next = writerRecords[++writes % WRITER_ADDRESSES];
+        resolver.applyDiff(Collections.singletonList(old), Collections.singletonList(next));
+    }
+}
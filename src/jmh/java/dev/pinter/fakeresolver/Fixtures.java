@@ -0,0 +1,90 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TextParseException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records and zone files shared by the benchmarks.
+ */
+final class Fixtures {
+    static final String DOMAIN = "bench.test.";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates the external resolver, answering every query locally with an A record, so the fallback path is
+     * measured without network.
+     *
+     * @return the resolver
+     */
+    static Resolver externalResolver() throws UnknownHostException {
+        return StubResolver.answeringAny(InetAddress.getByAddress(new byte[]{(byte) 192, 0, 2, 1}));
+    }
+
+    /**
+     * Creates one A record per host, named host0.bench.test., host1.bench.test., ...
+     *
+     * @param count number of records
+     * @return the records
+     */
+    static List<Record> hosts(int count) throws TextParseException, UnknownHostException {
+        Name origin = Name.fromString(DOMAIN);
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+            records.add(new ARecord(Name.fromString("host" + i, origin), DClass.IN, 60L, address));
+        }
+        return records;
+    }
+
+    /**
+     * Writes a zone file with an SOA, an NS and one A record per host.
+     *
+     * @param count number of hosts
+     * @return the zone file
+     */
+    static Path zoneFile(int count) throws IOException {
+        Path file = Files.createTempFile("bench", ".zone");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            w.write("$TTL 60\n");
+            w.write("@ IN SOA ns1 hostmaster 1 30 30 30 30\n");
+            w.write("@ IN NS ns1\n");
+            w.write("ns1 IN A 192.0.2.1\n");
+            for (int i = 0; i < count; i++) {
+                w.write("host" + i + " IN A 10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff) + "\n");
+            }
+        }
+        return file;
+    }
+}
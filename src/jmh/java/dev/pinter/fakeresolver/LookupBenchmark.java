@@ -0,0 +1,89 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbill.DNS.Message;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of single queries against record sets of increasing size: an internal hit, an internal miss (a name below
+ * a served name) and a fallback to the external resolver.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int records;
+
+    private FakeResolver resolver;
+    private Message hit;
+    private Message internalMiss;
+    private Message external;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.setRecords(Fixtures.hosts(records));
+        hit = StubResolver.newQuery("host" + (records / 2) + "." + Fixtures.DOMAIN);
+        internalMiss = StubResolver.newQuery("missing.host0." + Fixtures.DOMAIN);
+        external = StubResolver.newQuery("www.external.test.");
+    }
+
+    @Benchmark
+    public Message syncHit() throws IOException {
+        return resolver.send(hit);
+    }
+
+    @Benchmark
+    public Message asyncHit() throws ExecutionException, InterruptedException {
+        return resolver.sendAsync(hit).toCompletableFuture().get();
+    }
+
+    @Benchmark
+    public Message syncInternalMiss() throws IOException {
+        return resolver.send(internalMiss);
+    }
+
+    @Benchmark
+    public Message syncExternalFallback() throws IOException {
+        return resolver.send(external);
+    }
+
+    @Benchmark
+    public Message asyncExternalFallback() throws ExecutionException, InterruptedException {
+        return resolver.sendAsync(external).toCompletableFuture().get();
+    }
+}
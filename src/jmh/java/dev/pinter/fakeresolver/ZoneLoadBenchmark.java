@@ -0,0 +1,91 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbill.DNS.Record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a zone of increasing size through the validated, the streaming and the snapshot paths, and to
+ * generate random TXT records.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZoneLoadBenchmark {
+    @Param({"1000", "100000"})
+    public int records;
+
+    private Path zoneFile;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        zoneFile = Fixtures.zoneFile(records);
+        snapshot = Files.createTempFile("bench", ".snapshot");
+        snapshot.toFile().deleteOnExit();
+        FakeResolver resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.fromZoneFile(Fixtures.DOMAIN, zoneFile);
+        resolver.exportSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public FakeResolver zoneFile() throws IOException {
+        FakeResolver resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.fromZoneFile(Fixtures.DOMAIN, zoneFile.toString());
+        return resolver;
+    }
+
+    @Benchmark
+    public FakeResolver zoneFileStreaming() throws IOException {
+        FakeResolver resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.fromZoneFile(Fixtures.DOMAIN, zoneFile);
+        return resolver;
+    }
+
+    @Benchmark
+    public FakeResolver snapshot() throws IOException {
+        FakeResolver resolver = new FakeResolver(Fixtures.externalResolver());
+        resolver.fromSnapshot(snapshot);
+        return resolver;
+    }
+
+    @Benchmark
+    public List<Record> genNRandomTXTRecords() {
+        return FakeResolver.genNRandomTXTRecords("random." + Fixtures.DOMAIN, records);
+    }
+}
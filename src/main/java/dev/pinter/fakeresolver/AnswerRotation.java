@@ -0,0 +1,176 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Record;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Order in which the records of an RRset are returned, like the rotation of real DNS servers, used to test how
+ * clients spread load across several addresses or servers. See {@link FakeResolver#setAnswerRotation(AnswerRotation)}.
+ * <p>
+ * Policies are immutable and can be shared. Round-robin keeps one counter per RRset, incremented atomically without
+ * locking, so concurrent queries each get the next rotation.
+ */
+public final class AnswerRotation {
+    private enum Mode {
+        ROUND_ROBIN, RANDOM, WEIGHTED
+    }
+
+    private final Mode mode;
+    private final ToIntFunction<Record> weight;
+    private final int limit;
+
+    private AnswerRotation(Mode mode, ToIntFunction<Record> weight, int limit) {
+        this.mode = mode;
+        this.weight = weight;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a policy rotating the records by one position at every query.
+     *
+     * @return the policy
+     */
+    public static AnswerRotation roundRobin() {
+        return new AnswerRotation(Mode.ROUND_ROBIN, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a policy shuffling the records at every query.
+     *
+     * @return the policy
+     */
+    public static AnswerRotation random() {
+        return new AnswerRotation(Mode.RANDOM, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a policy ordering the records by weighted random selection, as for SRV records: each position is taken
+     * by one of the remaining records with a probability proportional to its weight. Records without weight come
+     * last, in random order.
+     *
+     * @param weight the weight of a record, e.g. {@code r -> ((SRVRecord) r).getWeight()}
+     * @return the policy
+     */
+    public static AnswerRotation weighted(ToIntFunction<Record> weight) {
+        if (weight == null) {
+            throw new IllegalArgumentException("Invalid weight function");
+        }
+        return new AnswerRotation(Mode.WEIGHTED, weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a copy of this policy answering at most a number of records, the first ones after ordering.
+     *
+     * @param limit maximum number of records answered
+     * @return the new policy
+     */
+    public AnswerRotation withLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        return new AnswerRotation(mode, weight, limit);
+    }
+
+    /**
+     * Returns the maximum number of records answered.
+     *
+     * @return the limit, {@link Integer#MAX_VALUE} when not limited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    boolean isRoundRobin() {
+        return mode == Mode.ROUND_ROBIN;
+    }
+
+    /**
+     * Orders an RRset.
+     *
+     * @param rrset   the records, not modified
+     * @param counter number of times the RRset was answered, for round-robin
+     * @return the records to answer
+     */
+    List<Record> apply(List<Record> rrset, int counter) {
+        int size = rrset.size();
+        if (size <= 1) {
+            return rrset;
+        }
+        List<Record> ordered;
+        switch (mode) {
+            case ROUND_ROBIN:
+                int first = Math.floorMod(counter, size);
+                ordered = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    ordered.add(rrset.get((first + i) % size));
+                }
+                break;
+            case RANDOM:
+                ordered = new ArrayList<>(rrset);
+                Collections.shuffle(ordered, ThreadLocalRandom.current());
+                break;
+            default:
+                ordered = weightedOrder(rrset);
+                break;
+        }
+        return size > limit ? ordered.subList(0, limit) : ordered;
+    }
+
+    private List<Record> weightedOrder(List<Record> rrset) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Record> remaining = new ArrayList<>(rrset.size());
+        List<Record> unweighted = new ArrayList<>();
+        long total = 0;
+        for (Record r : rrset) {
+            int w = weight.applyAsInt(r);
+            if (w > 0) {
+                remaining.add(r);
+                total += w;
+            } else {
+                unweighted.add(r);
+            }
+        }
+        List<Record> ordered = new ArrayList<>(rrset.size());
+        while (!remaining.isEmpty()) {
+            long pick = random.nextLong(total);
+            for (int i = 0; i < remaining.size(); i++) {
+                int w = weight.applyAsInt(remaining.get(i));
+                if (pick < w) {
+                    ordered.add(remaining.remove(i));
+                    total -= w;
+                    break;
+                }
+                pick -= w;
+            }
+        }
+        Collections.shuffle(unweighted, random);
+        ordered.addAll(unweighted);
+        return ordered;
+    }
+
+    @Override
+    public String toString() {
+        return "AnswerRotation [mode=" + mode + (limit == Integer.MAX_VALUE ? "" : ", limit=" + limit) + "]";
+    }
+}
@@ -0,0 +1,305 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A resolver that records the responses of another resolver to a cassette file, or replays them from it.
+ * <p>
+ * Used as the external resolver of a {@link FakeResolver}, it makes the external names deterministic and available
+ * offline: run once with {@link #record(Resolver, Path)} and later with {@link #replay(Path)}.
+ * <p>
+ * The cassette stores, for each question, the question and the response in DNS wire format. On replay the file is
+ * memory-mapped and indexed by question when opened, responses are only parsed when queried.
+ */
+public class CassetteResolver implements Resolver, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CassetteResolver.class);
+
+    private static final int MAGIC = 0x46524353; // FRCS
+    private static final int VERSION = 1;
+
+    private final Resolver delegate;
+    private final Path file;
+    private final Map<RecordKey, Entry> recorded;
+    private final ByteBuffer cassette;
+    private final Map<RecordKey, Integer> index;
+
+    private CassetteResolver(Resolver delegate, Path file) {
+        this.delegate = delegate;
+        this.file = file;
+        this.recorded = new ConcurrentHashMap<>();
+        this.cassette = null;
+        this.index = null;
+    }
+
+    private CassetteResolver(Path file, ByteBuffer cassette, Map<RecordKey, Integer> index) {
+        this.delegate = null;
+        this.file = file;
+        this.recorded = null;
+        this.cassette = cassette;
+        this.index = index;
+    }
+
+    /**
+     * Creates a resolver that sends queries to the delegate and records the responses. The cassette is written when
+     * the resolver is closed.
+     *
+     * @param delegate resolver used to answer the queries
+     * @param file     cassette file
+     * @return the recording resolver
+     */
+    public static CassetteResolver record(Resolver delegate, Path file) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid resolver");
+        }
+        return new CassetteResolver(delegate, file);
+    }
+
+    /**
+     * Creates a resolver that answers from a cassette file. Queries not recorded fail with an {@link IOException}.
+     *
+     * @param file cassette file
+     * @return the replaying resolver
+     * @throws IOException if unable to read the file, or if it is not a valid cassette
+     */
+    public static CassetteResolver replay(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid cassette file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cassette version " + version + ": " + file);
+        }
+        int count = buffer.getInt();
+        // an entry takes at least its two length fields
+        if (count < 0 || count > buffer.remaining() / 6) {
+            throw new IOException("Invalid cassette file: " + file);
+        }
+        Map<RecordKey, Integer> index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int questionLength = buffer.remaining() < 2 ? -1 : buffer.getShort() & 0xFFFF;
+            if (questionLength < 0 || buffer.remaining() < questionLength + 4) {
+                throw new IOException("Invalid cassette file: " + file);
+            }
+            byte[] question = new byte[questionLength];
+            buffer.get(question);
+            index.put(RecordKey.of(Record.fromWire(question, Section.QUESTION)), buffer.position());
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid cassette file: " + file);
+            }
+            buffer.position(buffer.position() + length);
+        }
+        logger.debug("Loaded {} responses from cassette '{}'", count, file);
+        return new CassetteResolver(file, buffer, index);
+    }
+
+    /**
+     * Returns whether this resolver is recording.
+     *
+     * @return true when recording, false when replaying
+     */
+    public boolean isRecording() {
+        return delegate != null;
+    }
+
+    /**
+     * Returns the number of responses recorded, or available for replay.
+     *
+     * @return size
+     */
+    public int size() {
+        return isRecording() ? recorded.size() : index.size();
+    }
+
+    /**
+     * Writes the cassette file with the responses recorded so far. Only the first response of each question is kept.
+     *
+     * @throws IOException if unable to write the file
+     * @throws IllegalStateException if replaying
+     */
+    public void save() throws IOException {
+        if (!isRecording()) {
+            throw new IllegalStateException("not recording");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            Entry[] entries = recorded.values().toArray(new Entry[0]);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.length);
+            for (Entry e : entries) {
+                out.writeShort(e.question.length);
+                out.write(e.question);
+                out.writeInt(e.response.length);
+                out.write(e.response);
+            }
+        }
+        logger.debug("Saved {} responses to cassette '{}'", recorded.size(), file);
+    }
+
+    /**
+     * Saves the cassette when recording.
+     *
+     * @throws IOException if unable to write the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (isRecording()) {
+            save();
+        }
+    }
+
+    @Override
+    public Message send(Message query) throws IOException {
+        if (isRecording()) {
+            Message response = delegate.send(query);
+            record(query, response);
+            return response;
+        }
+        return replay(query);
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query) {
+        if (isRecording()) {
+            return delegate.sendAsync(query).thenApply(response -> record(query, response));
+        }
+        try {
+            return CompletableFuture.completedFuture(replay(query));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+        if (isRecording()) {
+            return delegate.sendAsync(query, executor).thenApply(response -> record(query, response));
+        }
+        return sendAsync(query);
+    }
+
+    private Message record(Message query, Message response) {
+        Record question = query.getQuestion();
+        recorded.putIfAbsent(RecordKey.of(question),
+                new Entry(question.toWire(Section.QUESTION), response.toWire()));
+        return response;
+    }
+
+    private Message replay(Message query) throws IOException {
+        Integer position = index.get(RecordKey.of(query.getQuestion()));
+        if (position == null) {
+            throw new IOException("No response recorded for " + RecordKey.of(query.getQuestion()));
+        }
+        ByteBuffer buffer = cassette.duplicate();
+        int length = buffer.getInt(position);
+        buffer.position(position + 4);
+        buffer.limit(position + 4 + length);
+        Message response = new Message(buffer.slice());
+        response.getHeader().setID(query.getHeader().getID());
+        return response;
+    }
+
+    @Override
+    public void setPort(int port) {
+        if (isRecording()) {
+            delegate.setPort(port);
+        }
+    }
+
+    @Override
+    public void setTCP(boolean flag) {
+        if (isRecording()) {
+            delegate.setTCP(flag);
+        }
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag) {
+        if (isRecording()) {
+            delegate.setIgnoreTruncation(flag);
+        }
+    }
+
+    @Override
+    public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+        if (isRecording()) {
+            delegate.setEDNS(version, payloadSize, flags, options);
+        }
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key) {
+        if (isRecording()) {
+            delegate.setTSIGKey(key);
+        }
+    }
+
+    @Override
+    public void setTimeout(Duration timeout) {
+        if (isRecording()) {
+            delegate.setTimeout(timeout);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CassetteResolver [file=" + file + ", mode=" + (isRecording() ? "record" : "replay")
+                + ", responses=" + size() + "]";
+    }
+
+    private static final class Entry {
+        private final byte[] question;
+        private final byte[] response;
+
+        private Entry(byte[] question, byte[] response) {
+            this.question = question;
+            this.response = response;
+        }
+    }
+}
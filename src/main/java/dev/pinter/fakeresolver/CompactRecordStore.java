@@ -0,0 +1,568 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable record store keeping the records packed off the heap, for zones of millions of records. See
+ * {@link FakeResolver#setCompactZones(boolean)}.
+ * <p>
+ * Records are appended in uncompressed wire format to direct byte buffers of up to 64 MiB, and the heap only holds
+ * primitive arrays: the position of each record, a link to the next record of its RRset, and two open-addressing hash
+ * tables, one of the RRsets and one of the names (the owner names and all their ancestors), both keyed by the
+ * case-insensitive wire form of the name. A name in the tables is a position in the buffers, an ancestor being a
+ * suffix of the wire form of its owner name, so a name is never stored twice.
+ * <p>
+ * {@link Record} objects are only materialized for the RRsets looked up, and they are not kept; the answer templates
+ * keep the answers of the names queried repeatedly. A lookup allocates the canonical wire form of the name. The
+ * records use a few dozen bytes of heap each, and the buffers are freed with the store; they count toward the limit
+ * of direct memory of the JVM ({@code -XX:MaxDirectMemorySize}).
+ */
+final class CompactRecordStore implements RecordSource {
+    private static final int SEGMENT_BITS = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_NAME = 255;
+    private static final byte EXISTS = 1;
+    private static final byte OWNER = 2;
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final Name WILDCARD = Name.fromConstantString("*");
+
+    private final ByteBuffer[] segments;
+    private final long[] positions;
+    private final int[] next;
+    private final int count;
+    private final int[] rrsetHeads;
+    private final int[] rrsetHashes;
+    private final int[] counters;
+    private final long[] names;
+    private final int[] nameHashes;
+    private final byte[] nameFlags;
+    private final long[] types;
+    private final List<Record> records = new RecordList();
+    private final Map<RecordKey, Message> answerTemplates = new ConcurrentHashMap<>();
+
+    private CompactRecordStore(Builder builder) {
+        this.segments = builder.segments.toArray(new ByteBuffer[0]);
+        this.positions = Arrays.copyOf(builder.positions, builder.count);
+        this.next = Arrays.copyOf(builder.next, builder.count);
+        this.count = builder.count;
+        this.rrsetHeads = builder.rrsetHeads;
+        this.rrsetHashes = builder.rrsetHashes;
+        this.counters = new int[rrsetHeads.length];
+        this.names = builder.names;
+        this.nameHashes = builder.nameHashes;
+        this.nameFlags = builder.nameFlags;
+        this.types = builder.types;
+    }
+
+    /**
+     * Creates a store with the records.
+     *
+     * @param rs records
+     * @return the store
+     */
+    static CompactRecordStore of(Collection<? extends Record> rs) {
+        return new Builder().addAll(rs).build();
+    }
+
+    @Override
+    public List<Record> lookup(Name name, int type, int dclass) {
+        byte[] wire = name.toWireCanonical();
+        int slot = findRRset(segments, positions, rrsetHeads, rrsetHashes, wire, type, dclass,
+                rrsetHash(hash(wire, 0), type, dclass));
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        List<Record> found = new ArrayList<>(1);
+        for (int r = rrsetHeads[slot] - 1; r >= 0; r = next[r]) {
+            found.add(materialize(r));
+        }
+        return found;
+    }
+
+    @Override
+    public int nextRotation(Name name, int type, int dclass) {
+        byte[] wire = name.toWireCanonical();
+        int slot = findRRset(segments, positions, rrsetHeads, rrsetHashes, wire, type, dclass,
+                rrsetHash(hash(wire, 0), type, dclass));
+        return slot < 0 ? 0 : (int) COUNTERS.getAndAdd(counters, slot, 1);
+    }
+
+    @Override
+    public boolean hasType(int type) {
+        return (types[type >>> 6] & 1L << type) != 0;
+    }
+
+    @Override
+    public boolean isInternal(Name name) {
+        byte[] wire = name.toWireCanonical();
+        if ((flags(wire, 0) & OWNER) != 0) {
+            return true;
+        }
+        int[] offsets = labelOffsets(wire, name.labels());
+        int parent = -1;
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            int flags = flags(wire, offsets[i]);
+            if (flags == 0) {
+                return parent >= 0 && hasWildcard(wire, parent);
+            }
+            if ((flags & OWNER) != 0) {
+                return true;
+            }
+            parent = offsets[i];
+        }
+        return false;
+    }
+
+    @Override
+    public boolean nameExists(Name name) {
+        return flags(name.toWireCanonical(), 0) != 0;
+    }
+
+    @Override
+    public Name findWildcard(Name name) {
+        byte[] wire = name.toWireCanonical();
+        int[] offsets = labelOffsets(wire, name.labels());
+        int encloser = -1;
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            if (flags(wire, offsets[i]) == 0) {
+                break;
+            }
+            encloser = i;
+        }
+        if (encloser < 0 || !hasWildcard(wire, offsets[encloser])) {
+            return null;
+        }
+        try {
+            return Name.concatenate(WILDCARD, encloser == 0 ? name : new Name(name, encloser));
+        } catch (NameTooLongException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Message getAnswerTemplate(RecordKey key) {
+        return answerTemplates.get(key);
+    }
+
+    @Override
+    public void putAnswerTemplate(RecordKey key, Message template) {
+        answerTemplates.putIfAbsent(key, template);
+    }
+
+    /**
+     * Returns all records in insertion order. Records are materialized each time they are read from the list.
+     *
+     * @return read-only list
+     */
+    @Override
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes of the buffers holding the records.
+     *
+     * @return capacity of the buffers
+     */
+    long getOffHeapSize() {
+        long size = 0;
+        for (ByteBuffer segment : segments) {
+            size += segment.capacity();
+        }
+        return size;
+    }
+
+    private int flags(byte[] wire, int offset) {
+        int slot = findName(segments, names, nameHashes, wire, offset, hash(wire, offset));
+        return slot < 0 ? 0 : nameFlags[slot];
+    }
+
+    /**
+     * Tests if the wildcard directly below a name owns records.
+     */
+    private boolean hasWildcard(byte[] wire, int offset) {
+        int length = wire.length - offset + 2;
+        if (length > MAX_NAME) {
+            return false;
+        }
+        byte[] wildcard = new byte[length];
+        wildcard[0] = 1;
+        wildcard[1] = '*';
+        System.arraycopy(wire, offset, wildcard, 2, length - 2);
+        return (flags(wildcard, 0) & OWNER) != 0;
+    }
+
+    private Record materialize(int record) {
+        long position = positions[record];
+        ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+        int at = (int) position & (SEGMENT_SIZE - 1);
+        int nameLength = nameLength(segment, at);
+        byte[] wire = new byte[nameLength + 10 + (segment.getShort(at + nameLength + 8) & 0xFFFF)];
+        ByteBuffer view = segment.duplicate();
+        view.position(at);
+        view.get(wire);
+        try {
+            return Record.fromWire(wire, Section.ANSWER);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid record at position " + position, e);
+        }
+    }
+
+    private static int nameLength(ByteBuffer segment, int at) {
+        int length = 0;
+        int label;
+        while ((label = segment.get(at + length)) != 0) {
+            length += label + 1;
+        }
+        return length + 1;
+    }
+
+    private static int[] labelOffsets(byte[] wire, int labels) {
+        int[] offsets = new int[labels];
+        int offset = 0;
+        for (int i = 0; i < labels; i++) {
+            offsets[i] = offset;
+            offset += wire[offset] + 1;
+        }
+        return offsets;
+    }
+
+    /**
+     * Hashes the canonical wire form of a name, from the start of one of its labels.
+     */
+    private static int hash(byte[] wire, int offset) {
+        int h = 0;
+        for (int i = offset; i < wire.length; i++) {
+            h = 31 * h + wire[i];
+        }
+        return mix(h);
+    }
+
+    private static int rrsetHash(int nameHash, int type, int dclass) {
+        return mix(31 * (31 * nameHash + type) + dclass);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ h >>> 13;
+    }
+
+    /**
+     * Compares the name at a position of the buffers, ignoring case, with a name in canonical wire form.
+     */
+    private static boolean nameEquals(ByteBuffer[] segments, long position, byte[] wire, int offset) {
+        ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+        int at = (int) position & (SEGMENT_SIZE - 1);
+        while (true) {
+            int length = wire[offset];
+            if (segment.get(at) != length) {
+                return false;
+            }
+            if (length == 0) {
+                return true;
+            }
+            for (int i = 1; i <= length; i++) {
+                byte b = segment.get(at + i);
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != wire[offset + i]) {
+                    return false;
+                }
+            }
+            at += length + 1;
+            offset += length + 1;
+        }
+    }
+
+    /**
+     * Finds the slot of a name in the table of names.
+     *
+     * @return the slot, or the complement of the empty slot where the name would be inserted
+     */
+    private static int findName(ByteBuffer[] segments, long[] names, int[] hashes, byte[] wire, int offset,
+                                int hash) {
+        int mask = names.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            long position = names[i];
+            if (position < 0) {
+                return ~i;
+            }
+            if (hashes[i] == hash && nameEquals(segments, position, wire, offset)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of an RRset in the table of RRsets, comparing with the first record of each RRset.
+     *
+     * @return the slot, or the complement of the empty slot where the RRset would be inserted
+     */
+    private static int findRRset(ByteBuffer[] segments, long[] positions, int[] heads, int[] hashes, byte[] wire,
+                                 int type, int dclass, int hash) {
+        int mask = heads.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int head = heads[i];
+            if (head == 0) {
+                return ~i;
+            }
+            long position = positions[head - 1];
+            if (hashes[i] == hash && nameEquals(segments, position, wire, 0)) {
+                ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+                int at = ((int) position & (SEGMENT_SIZE - 1)) + wire.length;
+                if ((segment.getShort(at) & 0xFFFF) == type && (segment.getShort(at + 2) & 0xFFFF) == dclass) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompactRecordStore [records=" + count + ", offHeap=" + getOffHeapSize() + "]";
+    }
+
+    /**
+     * Read-only view of the records, materializing them on access.
+     */
+    private final class RecordList extends AbstractList<Record> {
+        @Override
+        public Record get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+            }
+            return materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Appends records to new buffers. Not thread-safe, and not usable after {@link #build()}.
+     */
+    static final class Builder {
+        private final List<ByteBuffer> segments = new ArrayList<>();
+        private ByteBuffer[] segmentArray = new ByteBuffer[0];
+        private ByteBuffer segment;
+        private long[] positions = new long[INITIAL_CAPACITY];
+        private int[] next = new int[INITIAL_CAPACITY];
+        private int count;
+        private int[] rrsetHeads = new int[INITIAL_CAPACITY];
+        private int[] rrsetTails = new int[INITIAL_CAPACITY];
+        private int[] rrsetHashes = new int[INITIAL_CAPACITY];
+        private int rrsets;
+        private long[] names = emptyNames(INITIAL_CAPACITY);
+        private int[] nameHashes = new int[INITIAL_CAPACITY];
+        private byte[] nameFlags = new byte[INITIAL_CAPACITY];
+        private int nameCount;
+        private final long[] types = new long[1024];
+
+        /**
+         * Adds a record to the buffers and to the index.
+         *
+         * @param r record
+         * @return this builder
+         */
+        Builder add(Record r) {
+            byte[] canonical = r.getName().toWireCanonical();
+            long position = append(r.toWire(Section.ANSWER));
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                next = Arrays.copyOf(next, count * 2);
+            }
+            int record = count++;
+            positions[record] = position;
+            next[record] = -1;
+            types[r.getType() >>> 6] |= 1L << r.getType();
+
+            int nameHash = hash(canonical, 0);
+            int hash = rrsetHash(nameHash, r.getType(), r.getDClass());
+            int slot = findRRset(segmentArray, positions, rrsetHeads, rrsetHashes, canonical, r.getType(),
+                    r.getDClass(), hash);
+            if (slot >= 0) {
+                next[rrsetTails[slot]] = record;
+                rrsetTails[slot] = record;
+            } else {
+                slot = ~slot;
+                rrsetHeads[slot] = record + 1;
+                rrsetTails[slot] = record;
+                rrsetHashes[slot] = hash;
+                if (++rrsets * 2 > rrsetHeads.length) {
+                    growRRsets();
+                }
+            }
+
+            for (int offset = 0; ; offset += canonical[offset] + 1) {
+                int h = offset == 0 ? nameHash : hash(canonical, offset);
+                int found = findName(segmentArray, names, nameHashes, canonical, offset, h);
+                if (found >= 0) {
+                    // the ancestors were added with the name
+                    nameFlags[found] |= offset == 0 ? OWNER : 0;
+                    break;
+                }
+                found = ~found;
+                names[found] = position + offset;
+                nameHashes[found] = h;
+                nameFlags[found] = offset == 0 ? EXISTS | OWNER : EXISTS;
+                if (++nameCount * 2 > names.length) {
+                    growNames();
+                }
+                if (canonical[offset] == 0) {
+                    break;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds records to the buffers and to the index.
+         *
+         * @param rs records
+         * @return this builder
+         */
+        Builder addAll(Collection<? extends Record> rs) {
+            for (Record r : rs) {
+                add(r);
+            }
+            return this;
+        }
+
+        CompactRecordStore build() {
+            return new CompactRecordStore(this);
+        }
+
+        /**
+         * Copies a record to the buffers, doubling the last buffer until it reaches its maximum size, then starting
+         * a new one.
+         *
+         * @return the position of the record
+         */
+        private long append(byte[] wire) {
+            if (segment == null || segment.remaining() < wire.length) {
+                if (segment != null && segment.capacity() < SEGMENT_SIZE) {
+                    int capacity = segment.capacity();
+                    while (capacity - segment.position() < wire.length && capacity < SEGMENT_SIZE) {
+                        capacity *= 2;
+                    }
+                    if (capacity - segment.position() >= wire.length) {
+                        ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+                        segment.flip();
+                        bigger.put(segment);
+                        segment = bigger;
+                        segments.set(segments.size() - 1, segment);
+                    } else {
+                        newSegment(wire.length);
+                    }
+                } else {
+                    newSegment(wire.length);
+                }
+                segmentArray = segments.toArray(new ByteBuffer[0]);
+            }
+            long position = (long) (segments.size() - 1) << SEGMENT_BITS | segment.position();
+            segment.put(wire);
+            return position;
+        }
+
+        private void newSegment(int minimum) {
+            int capacity = INITIAL_SEGMENT_SIZE;
+            while (capacity < minimum) {
+                capacity *= 2;
+            }
+            segment = ByteBuffer.allocateDirect(capacity);
+            segments.add(segment);
+        }
+
+        private void growRRsets() {
+            int[] heads = new int[rrsetHeads.length * 2];
+            int[] tails = new int[heads.length];
+            int[] hashes = new int[heads.length];
+            int mask = heads.length - 1;
+            for (int i = 0; i < rrsetHeads.length; i++) {
+                if (rrsetHeads[i] != 0) {
+                    int slot = rrsetHashes[i] & mask;
+                    while (heads[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    heads[slot] = rrsetHeads[i];
+                    tails[slot] = rrsetTails[i];
+                    hashes[slot] = rrsetHashes[i];
+                }
+            }
+            rrsetHeads = heads;
+            rrsetTails = tails;
+            rrsetHashes = hashes;
+        }
+
+        private void growNames() {
+            long[] positions = emptyNames(names.length * 2);
+            int[] hashes = new int[positions.length];
+            byte[] flags = new byte[positions.length];
+            int mask = positions.length - 1;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] >= 0) {
+                    int slot = nameHashes[i] & mask;
+                    while (positions[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    positions[slot] = names[i];
+                    hashes[slot] = nameHashes[i];
+                    flags[slot] = nameFlags[i];
+                }
+            }
+            names = positions;
+            nameHashes = hashes;
+            nameFlags = flags;
+        }
+
+        private static long[] emptyNames(int capacity) {
+            long[] positions = new long[capacity];
+            Arrays.fill(positions, -1);
+            return positions;
+        }
+    }
+}
@@ -18,10 +18,13 @@ package dev.pinter.fakeresolver;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xbill.DNS.CNAMERecord;
 import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNAMERecord;
 import org.xbill.DNS.EDNSOption;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
@@ -36,27 +39,67 @@ import org.xbill.DNS.Type;
 import org.xbill.DNS.Zone;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
  * A resolver implementation to be used in unit tests.
+ * <p>
+ * Queries read an immutable snapshot of the records without locking, so one instance can be shared by concurrent
+ * tests. Each change to the records publishes a new snapshot atomically.
  */
 public class FakeResolver implements Resolver {
     private static final Logger logger = LoggerFactory.getLogger(FakeResolver.class);
 
     private static final String MSG_SEARCH_EXT = "Searching '{}' externally";
     private static final String MSG_FOUND_INT = "Found '{}' internally";
+    private static final int MAX_CHAIN_LENGTH = 16;
+    private static final int[] ADDRESS_TYPES = {Type.A, Type.AAAA};
+    private static final int DEFAULT_BATCH_CONCURRENCY = 32;
 
-    private final List<Record> responseRecords = new ArrayList<>();
+    private final Object writeLock = new Object();
+    private volatile RecordStore responseRecords = RecordStore.EMPTY;
+    private volatile Executor asyncExecutor;
+    private volatile ResponseCache responseCache;
+    private volatile boolean answerTemplates;
+    private volatile boolean compactZones;
+    private volatile FakeResolverMetrics metrics;
+    private volatile QueryLog queryLog;
+    private volatile TtlDecay ttlDecay;
+    private volatile int batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
+    private volatile FaultInjector faultInjector;
+    private final Map<Name, RecordSource> zones = new ConcurrentHashMap<>();
+    private volatile int[] zoneDepths = new int[0];
+    private volatile AnswerRotation answerRotation;
+    private final Map<RecordKey, AnswerRotation> rotations = new ConcurrentHashMap<>();
     private final Resolver externalResolver;
 
     /**
@@ -114,42 +157,62 @@ public class FakeResolver implements Resolver {
      * @return the dns message
      * {@inheritDoc}
      */
-    @SuppressWarnings("LoggingSimilarMessage")
     @Override
     public Message send(Message query) throws IOException {
-        Message response = buildMessage(query);
-        if (response.getSection(Section.ANSWER).isEmpty() && !isInternal(query.getQuestion().getName())) {
-            logger.debug(MSG_SEARCH_EXT, query.getQuestion().getName());
-            return externalResolver.send(query);
-        } else {
-            logger.debug(MSG_FOUND_INT, query.getQuestion().getName());
+        logQuery(responseRecords, query);
+        FaultInjector f = faultInjector;
+        if (f != null) {
+            return await(f.apply(query, () -> {
+                try {
+                    return CompletableFuture.completedFuture(resolve(query));
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }));
+        }
+        return resolve(query);
+    }
+
+    private Message resolve(Message query) throws IOException {
+        Message response = answerInternally(query);
+        if (response == null) {
+            return sendExternally(query);
         }
 
         return response;
     }
 
     /**
-     * Sends a query using the external resolver if not found internally
+     * Sends a query using the external resolver if not found internally.
+     * The answer is built on the caller thread, unless the virtual thread mode is enabled.
      *
      * @param query The query to send.
      *              {@inheritDoc}
+     * @see #setVirtualThreads(boolean)
      */
-    @SuppressWarnings("LoggingSimilarMessage")
     @Override
     public CompletionStage<Message> sendAsync(Message query) {
-        Message response = buildMessage(query);
-        if (response.getSection(Section.ANSWER).isEmpty() && !isInternal(query.getQuestion().getName())) {
-            logger.debug(MSG_SEARCH_EXT, query.getQuestion().getName());
-            return externalResolver.sendAsync(query);
-        } else {
-            logger.debug(MSG_FOUND_INT, query.getQuestion().getName());
+        logQuery(responseRecords, query);
+        FaultInjector f = faultInjector;
+        return f == null ? resolveAsync(query) : f.apply(query, () -> resolveAsync(query));
+    }
+
+    private CompletionStage<Message> resolveAsync(Message query) {
+        Executor executor = asyncExecutor;
+        if (executor != null) {
+            return resolveAsync(query, executor);
+        }
+        Message response = answerInternally(query);
+        if (response == null) {
+            return sendExternallyAsync(query, externalResolver::sendAsync);
         }
 
         return CompletableFuture.completedFuture(response);
     }
 
     /**
-     * Sends a query using the external resolver if not found internally
+     * Sends a query using the external resolver if not found internally.
+     * The answer is built on the executor, which is also passed to the external resolver.
      *
      * @param query    The query to send.
      * @param executor The service to use for async operations.
@@ -157,7 +220,16 @@ public class FakeResolver implements Resolver {
      */
     @Override
     public CompletionStage<Message> sendAsync(Message query, Executor executor) {
-        return this.sendAsync(query);
+        logQuery(responseRecords, query);
+        FaultInjector f = faultInjector;
+        return f == null ? resolveAsync(query, executor) : f.apply(query, () -> resolveAsync(query, executor));
+    }
+
+    private CompletionStage<Message> resolveAsync(Message query, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> answerInternally(query), executor)
+                .thenCompose(response -> response == null
+                        ? sendExternallyAsync(query, q -> externalResolver.sendAsync(q, executor))
+                        : CompletableFuture.completedFuture(response));
     }
 
     /**
@@ -171,20 +243,447 @@ public class FakeResolver implements Resolver {
     }
 
     /**
-     * Tests if a name is found internally
+     * Resolves many queries in one call. The names served internally are all answered from the same snapshot of the
+     * records, the others are sent to the external resolver in parallel, with at most
+     * {@link #getBatchConcurrency()} queries in flight at a time.
+     *
+     * @param queries the queries
+     * @return the responses, in the order of the queries. Fails with the first error of the external resolver.
+     */
+    public CompletionStage<List<Message>> resolveAll(Collection<Message> queries) {
+        RecordStore store = currentRecords();
+        Message[] batch = queries.toArray(new Message[0]);
+        Message[] responses = new Message[batch.length];
+        int[] misses = new int[batch.length];
+        int missCount = 0;
+        for (int i = 0; i < batch.length; i++) {
+            logQuery(store, batch[i]);
+            responses[i] = answerInternally(store, batch[i]);
+            if (responses[i] == null) {
+                misses[missCount++] = i;
+            }
+        }
+        if (missCount == 0) {
+            return CompletableFuture.completedFuture(Arrays.asList(responses));
+        }
+        Executor executor = asyncExecutor;
+        Function<Message, CompletionStage<Message>> upstream = executor == null
+                ? externalResolver::sendAsync
+                : q -> externalResolver.sendAsync(q, executor);
+        return new ExternalBatch(batch, responses, Arrays.copyOf(misses, missCount), upstream)
+                .start(batchConcurrency);
+    }
+
+    /**
+     * Sets the maximum number of queries of a {@link #resolveAll(Collection)} call sent to the external resolver at
+     * the same time.
+     *
+     * @param concurrency maximum queries in flight, the default is {@value #DEFAULT_BATCH_CONCURRENCY}
+     */
+    public void setBatchConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency");
+        }
+        this.batchConcurrency = concurrency;
+    }
+
+    /**
+     * Returns the maximum number of queries of a batch sent to the external resolver at the same time.
+     *
+     * @return maximum queries in flight
+     */
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    private Message answerInternally(Message query) {
+        return answerInternally(currentRecords(), query);
+    }
+
+    /**
+     * Returns the snapshot of the shared records, after applying the expirations and changes due when the TTL decay
+     * is enabled.
+     *
+     * @return the snapshot
+     */
+    private RecordStore currentRecords() {
+        TtlDecay d = ttlDecay;
+        if (d != null) {
+            d.advance();
+        }
+        return responseRecords;
+    }
+
+    /**
+     * Builds the answer from the records of the zone enclosing the name, or from the shared records.
+     *
+     * @param shared the shared records snapshot
+     * @param query  the dns query
+     * @return the dns answer, or null if the name must be searched externally
+     */
+    @SuppressWarnings("LoggingSimilarMessage")
+    private Message answerInternally(RecordStore shared, Message query) {
+        FakeResolverMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        Record question = query.getQuestion();
+        RecordSource store = route(shared, question.getName());
+        if (!isInternal(shared, store, question.getName())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(MSG_SEARCH_EXT, question.getName());
+            }
+            if (m != null) {
+                m.recordExternal(question.getType());
+            }
+            return null;
+        }
+        Message response = buildMessage(store, query);
+        TtlDecay d = ttlDecay;
+        if (d != null && store == shared) {
+            response = d.decay(response);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(MSG_FOUND_INT, query.getQuestion().getName());
+        }
+        if (m != null) {
+            boolean answered = !response.getSection(Section.ANSWER).isEmpty();
+            m.recordInternal(query.getQuestion().getType(), response.getRcode(), answered, System.nanoTime() - start);
+        }
+
+        return response;
+    }
+
+    /**
+     * Tests if a name is answered internally.
+     *
+     * @param shared the shared records snapshot
+     * @param store  the records serving the name, see {@link #route(RecordStore, Name)}
+     * @param name   the name queried
+     * @return false if the name must be searched externally
+     */
+    private static boolean isInternal(RecordStore shared, RecordSource store, Name name) {
+        // a zone is authoritative for every name below its apex, even one no record of the zone encloses
+        return store != shared || store.isInternal(name);
+    }
+
+    /**
+     * Appends the question of a query to the query log, if one is set. Called before the fault injector, so the
+     * queries it delays or fails are logged too.
+     *
+     * @param shared the shared records snapshot
+     * @param query  the dns query
+     */
+    private void logQuery(RecordStore shared, Message query) {
+        QueryLog log = queryLog;
+        if (log == null) {
+            return;
+        }
+        Record question = query.getQuestion();
+        Name name = question.getName();
+        log.record(name, question.getType(), question.getDClass(), isInternal(shared, route(shared, name), name));
+    }
+
+    /**
+     * Finds the records serving a name: the zone with the longest apex at or above the name, or the shared records
+     * when no zone encloses it.
+     * <p>
+     * Only the suffixes with as many labels as a loaded apex are looked up, deepest first. Each one is a new
+     * {@link Name}, so a query allocates one name per distinct apex depth below its own, usually a single one, and
+     * none when no zone is loaded.
+     *
+     * @param shared the shared records snapshot
+     * @param name   the name queried
+     * @return the records snapshot
+     */
+    private RecordSource route(RecordStore shared, Name name) {
+        int labels = name.labels();
+        for (int depth : zoneDepths) {
+            if (depth > labels) {
+                continue;
+            }
+            RecordSource zone = zones.get(depth == labels ? name : new Name(name, labels - depth));
+            if (zone != null) {
+                return zone;
+            }
+        }
+        return shared;
+    }
+
+    void putZone(Name origin, RecordSource zone) {
+        synchronized (zones) {
+            // the depth is published before the zone, so a query never misses a zone in the map
+            zoneDepths = zoneDepths(origin);
+            zones.put(origin, zone);
+        }
+    }
+
+    /**
+     * Replaces a zone only if it was not replaced or dropped since it was read.
+     *
+     * @param origin      zone apex
+     * @param expected    the zone read
+     * @param replacement the new zone
+     * @return true if replaced, false if the zone loaded is no longer the one expected
+     */
+    boolean replaceZone(Name origin, RecordSource expected, RecordSource replacement) {
+        return zones.replace(origin, expected, replacement);
+    }
+
+    private boolean removeZone(Name origin) {
+        synchronized (zones) {
+            boolean removed = zones.remove(origin) != null;
+            zoneDepths = zoneDepths(null);
+            return removed;
+        }
+    }
+
+    /**
+     * Returns the label counts of the apexes of the zones, deepest first.
+     *
+     * @param added apex of a zone about to be added, or null
+     * @return the distinct label counts
+     */
+    private int[] zoneDepths(Name added) {
+        IntStream depths = zones.keySet().stream().mapToInt(Name::labels);
+        if (added != null) {
+            depths = IntStream.concat(depths, IntStream.of(added.labels()));
+        }
+        return depths.distinct().boxed().sorted(Collections.reverseOrder()).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Sends the query to the external resolver, through the response cache if one is set.
+     *
+     * @param query the dns query
+     * @return the dns response
+     * @throws IOException if the external resolver fails
+     */
+    private Message sendExternally(Message query) throws IOException {
+        FakeResolverMetrics m = metrics;
+        if (m == null) {
+            return sendExternallyThroughCache(query);
+        }
+        long start = System.nanoTime();
+        try {
+            return sendExternallyThroughCache(query);
+        } finally {
+            m.recordExternalLatency(System.nanoTime() - start);
+        }
+    }
+
+    private Message sendExternallyThroughCache(Message query) throws IOException {
+        ResponseCache cache = responseCache;
+        if (cache == null) {
+            return externalResolver.send(query);
+        }
+        return await(cache.resolve(query, q -> {
+            try {
+                return CompletableFuture.completedFuture(externalResolver.send(q));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }));
+    }
+
+    /**
+     * Waits for a response.
      *
-     * @param name name to test
-     * @return result
+     * @param response the pending response
+     * @return the dns response
+     * @throws IOException if the response failed
      */
-    @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    private boolean isInternal(Name name) {
-        for (Record r : responseRecords) {
-            if (name.relativize(r.getName()) != name) {
-                return true;
+    private static Message await(CompletionStage<Message> response) throws IOException {
+        try {
+            return response.toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException(e.getCause());
         }
+    }
+
+    /**
+     * Sends the query asynchronously to the external resolver, through the response cache if one is set.
+     *
+     * @param query    the dns query
+     * @param upstream function sending the query to the external resolver
+     * @return the dns response
+     */
+    private CompletionStage<Message> sendExternallyAsync(Message query,
+                                                         Function<Message, CompletionStage<Message>> upstream) {
+        FakeResolverMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        ResponseCache cache = responseCache;
+        CompletionStage<Message> response = cache == null ? upstream.apply(query) : cache.resolve(query, upstream);
+        if (m != null) {
+            response = response.whenComplete((r, ex) -> m.recordExternalLatency(System.nanoTime() - start));
+        }
+        return response;
+    }
+
+    /**
+     * Sets the cache used for the responses of the external resolver. Names served internally are never cached.
+     *
+     * @param responseCache the cache, or null to disable caching
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Returns the cache used for the responses of the external resolver.
+     *
+     * @return the cache, or null if caching is disabled
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the metrics recording the queries of this resolver. The same metrics can be shared by several resolvers.
+     *
+     * @param metrics the metrics, or null to stop recording
+     */
+    public void setMetrics(FakeResolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics recording the queries of this resolver.
+     *
+     * @return the metrics, or null if not recording
+     */
+    public FakeResolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the log receiving the questions of this resolver, with the time they arrived and whether they were
+     * answered internally. The log is not closed by the resolver.
+     *
+     * @param queryLog the log, or null to stop logging
+     */
+    public void setQueryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    /**
+     * Returns the log receiving the questions of this resolver.
+     *
+     * @return the log, or null if not logging
+     */
+    public QueryLog getQueryLog() {
+        return queryLog;
+    }
+
+    /**
+     * Enables the aging of the shared records, with a clock that tests can move forward. Answers carry the TTL left
+     * since the RRset was added, and an RRset is removed once its TTL has elapsed; changes can be scheduled with
+     * {@link #scheduleRecordChange(Duration, Collection, Collection)}. The records already added start aging now.
+     * The zones loaded with {@link #loadZone(String, Path)} and the external responses do not age.
+     * <p>
+     * Expirations are applied when a query arrives after they are due, all the RRsets due at once in a single
+     * change, or by {@link #expireRecords()}.
+     *
+     * @param clock the clock, or null to disable aging; records are then kept with their full TTL
+     */
+    public void setClock(Clock clock) {
+        synchronized (writeLock) {
+            if (clock == null) {
+                ttlDecay = null;
+                return;
+            }
+            TtlDecay d = new TtlDecay(this, clock);
+            for (Record r : responseRecords.getRecords()) {
+                d.register(r);
+            }
+            ttlDecay = d;
+        }
+    }
+
+    /**
+     * Returns the clock aging the shared records.
+     *
+     * @return the clock, or null if records do not age
+     */
+    public Clock getClock() {
+        TtlDecay d = ttlDecay;
+        return d == null ? null : d.getClock();
+    }
+
+    /**
+     * Schedules a change of the shared records, applied once the clock set with {@link #setClock(Clock)} has moved
+     * by the delay. The records removed and added are published at once.
+     *
+     * @param delay   time from now
+     * @param removed records removed
+     * @param added   records added
+     * @throws IllegalStateException if no clock is set
+     */
+    public void scheduleRecordChange(Duration delay, Collection<Record> removed, Collection<Record> added) {
+        if (delay == null || delay.isNegative()) {
+            throw new IllegalArgumentException("Invalid delay");
+        }
+        TtlDecay d = ttlDecay;
+        if (d == null) {
+            throw new IllegalStateException("no clock set");
+        }
+        d.schedule(delay.toMillis(), removed, added);
+    }
+
+    /**
+     * Applies the expirations and scheduled changes due by the clock. They are also applied before each query, so
+     * this is only needed to observe them through {@link #getRecords()}.
+     *
+     * @return number of RRsets expired and changes applied
+     */
+    public int expireRecords() {
+        TtlDecay d = ttlDecay;
+        return d == null ? 0 : d.advance();
+    }
+
+    /**
+     * Sets the injector of latency and failures into the responses of {@link #send(Message)} and
+     * {@link #sendAsync(Message)}, for names served internally and externally alike. Batches of
+     * {@link #resolveAll(Collection)} are not affected.
+     *
+     * @param faultInjector the injector, or null to answer normally
+     */
+    public void setFaultInjector(FaultInjector faultInjector) {
+        this.faultInjector = faultInjector;
+    }
+
+    /**
+     * Returns the injector of latency and failures into the responses.
+     *
+     * @return the injector, or null if not injecting faults
+     */
+    public FaultInjector getFaultInjector() {
+        return faultInjector;
+    }
+
+    /**
+     * Enables the virtual thread mode. When enabled, {@link #sendAsync(Message)} builds each answer, and searches
+     * external names, on a new virtual thread instead of the caller thread. Useful when thousands of asynchronous
+     * lookups are in flight at once.
+     *
+     * @param enabled true to run asynchronous queries on virtual threads
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public void setVirtualThreads(boolean enabled) {
+        asyncExecutor = enabled ? VirtualThreads.executor() : null;
+    }
 
-        return false;
+    /**
+     * Returns whether the virtual thread mode is enabled.
+     *
+     * @return true if asynchronous queries run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return asyncExecutor != null;
     }
 
     /**
@@ -194,8 +693,13 @@ public class FakeResolver implements Resolver {
      * @param responseRecords records
      */
     public void setRecords(List<Record> responseRecords) {
-        this.responseRecords.clear();
-        this.responseRecords.addAll(responseRecords);
+        synchronized (writeLock) {
+            TtlDecay d = ttlDecay;
+            if (d != null) {
+                d.clear();
+            }
+            this.responseRecords = sharedBuilder(RecordStore.EMPTY).addAll(responseRecords).build();
+        }
     }
 
     /**
@@ -205,8 +709,7 @@ public class FakeResolver implements Resolver {
      * @param responseRecord record
      */
     public void setRecord(Record responseRecord) {
-        this.responseRecords.clear();
-        this.responseRecords.add(responseRecord);
+        setRecords(Collections.singletonList(responseRecord));
     }
 
     /**
@@ -216,23 +719,34 @@ public class FakeResolver implements Resolver {
      * @param responseRecord record
      */
     public void addRecord(Record responseRecord) {
-        this.responseRecords.add(responseRecord);
+        addRecords(Collections.singletonList(responseRecord));
     }
 
     /**
-     * Clear the records list;
+     * Clear the records list, and drop the zones loaded with {@link #loadZone(String, Path)};
      */
     public void clearRecords() {
-        responseRecords.clear();
+        synchronized (writeLock) {
+            responseRecords = RecordStore.EMPTY;
+            TtlDecay d = ttlDecay;
+            if (d != null) {
+                d.clear();
+            }
+        }
+        synchronized (zones) {
+            zones.clear();
+            zoneDepths = new int[0];
+        }
     }
 
     /**
-     * Returns the records list.
+     * Returns the records list. The list is a read-only snapshot, later changes to the resolver are not reflected.
+     * The zones loaded with {@link #loadZone(String, Path)} are not included, see {@link #getZoneRecords(String)}.
      *
      * @return list
      */
     public List<Record> getRecords() {
-        return responseRecords;
+        return responseRecords.getRecords();
     }
 
     /**
@@ -242,7 +756,9 @@ public class FakeResolver implements Resolver {
      * @param responseRecords records
      */
     public void addRecords(List<Record> responseRecords) {
-        this.responseRecords.addAll(responseRecords);
+        synchronized (writeLock) {
+            this.responseRecords = sharedBuilder().addAll(responseRecords).build();
+        }
     }
 
     /**
@@ -254,18 +770,328 @@ public class FakeResolver implements Resolver {
      * @throws IOException if unable to open file
      */
     public void fromZoneFile(String domain, String zoneFile) throws IOException {
-        if (domain == null) {
-            throw new IllegalArgumentException("Invalid domain");
+        Zone z = new Zone(ZoneLoader.toOrigin(domain), zoneFile);
+        List<Record> records = new ArrayList<>();
+        for (RRset rrset : z) {
+            records.addAll(rrset.rrs());
         }
-        if (!domain.endsWith(".")) {
-            domain += ".";
+        addRecords(records);
+    }
+
+    /**
+     * Import records from a zone file, streaming them into the records list as they are parsed.
+     * Gzipped files are detected and decompressed.
+     * Records list is not cleared. Unlike {@link #fromZoneFile(String, String)} the zone is not validated, so it
+     * does not need SOA or NS records at the apex.
+     * The records are published at once when the file is fully read, other changes to the records wait until then.
+     *
+     * @param domain   domain name
+     * @param zoneFile zonefile path
+     * @throws IOException if unable to open or parse the file
+     */
+    public void fromZoneFile(String domain, Path zoneFile) throws IOException {
+        Name origin = ZoneLoader.toOrigin(domain);
+        fromZoneStream(origin, ZoneLoader.open(zoneFile));
+    }
+
+    /**
+     * Import records from a zone in master format, streaming them into the records list as they are parsed.
+     * Gzipped streams are detected and decompressed. The stream is closed when done.
+     * Records list is not cleared.
+     *
+     * @param domain domain name
+     * @param in     zone stream
+     * @throws IOException if unable to read or parse the stream
+     */
+    public void fromZoneStream(String domain, InputStream in) throws IOException {
+        Name origin = ZoneLoader.toOrigin(domain);
+        fromZoneStream(origin, ZoneLoader.decompress(in));
+    }
+
+    private void fromZoneStream(Name origin, InputStream in) throws IOException {
+        synchronized (writeLock) {
+            RecordStore.Builder builder = sharedBuilder();
+            long count = ZoneLoader.load(origin, in, builder::addAll);
+            responseRecords = builder.build();
+            logger.debug("Loaded {} records of zone '{}'", count, origin);
         }
-        Zone z = new Zone(Name.fromString(domain), zoneFile);
-        for (RRset rrset : z) {
-            responseRecords.addAll(rrset.rrs());
+    }
+
+    /**
+     * Import records from a zone file through a binary snapshot. When the snapshot was made from the current contents
+     * of the zone file, the records are read from the snapshot without parsing the zone. Otherwise the zone file is
+     * parsed, and the snapshot is written for the next time.
+     * Records list is not cleared.
+     *
+     * @param domain   domain name
+     * @param zoneFile zonefile path, the source of truth of the records
+     * @param snapshot snapshot path
+     * @throws IOException if unable to read the zone, or to write the snapshot
+     * @see #exportSnapshot(Path)
+     */
+    public void fromZoneFile(String domain, Path zoneFile, Path snapshot) throws IOException {
+        Name origin = ZoneLoader.toOrigin(domain);
+        long checksum = RecordSnapshot.zoneChecksum(origin, zoneFile);
+        if (RecordSnapshot.isCurrent(snapshot, checksum)) {
+            try {
+                fromSnapshot(snapshot);
+                return;
+            } catch (IOException e) {
+                logger.warn("Ignoring snapshot '{}': {}", snapshot, e.getMessage());
+            }
+        }
+        List<Record> records = new ArrayList<>();
+        ZoneLoader.load(origin, ZoneLoader.open(zoneFile), records::addAll);
+        RecordSnapshot.write(snapshot, records, checksum);
+        addRecords(records);
+    }
+
+    /**
+     * Save all records to a binary snapshot, in DNS wire format. Reloading a snapshot does not parse any text.
+     *
+     * @param snapshot snapshot path
+     * @throws IOException if unable to write the file
+     * @see #fromSnapshot(Path)
+     */
+    public void exportSnapshot(Path snapshot) throws IOException {
+        RecordSnapshot.write(snapshot, responseRecords.getRecords(), 0);
+    }
+
+    /**
+     * Import records from a binary snapshot.
+     * Records list is not cleared.
+     *
+     * @param snapshot snapshot path
+     * @throws IOException if unable to read the file, or if it is not a valid snapshot
+     * @see #exportSnapshot(Path)
+     */
+    public void fromSnapshot(Path snapshot) throws IOException {
+        synchronized (writeLock) {
+            RecordStore.Builder builder = sharedBuilder();
+            long count = RecordSnapshot.read(snapshot, builder::addAll);
+            responseRecords = builder.build();
+            logger.debug("Loaded {} records from snapshot '{}'", count, snapshot);
+        }
+    }
+
+    /**
+     * Import records made by a zone generator, streaming them into the records list as they are generated.
+     * Records list is not cleared.
+     *
+     * @param generator the generator
+     * @see ZoneGenerator
+     */
+    public void fromGenerator(ZoneGenerator generator) {
+        synchronized (writeLock) {
+            RecordStore.Builder builder = sharedBuilder();
+            long count = generator.generate(builder::addAll);
+            responseRecords = builder.build();
+            logger.debug("Generated {} records of zone '{}'", count, generator.getOrigin());
+        }
+    }
+
+    /**
+     * Import records from several zone files, parsing them in parallel.
+     * Gzipped files are detected and decompressed.
+     * Records list is not cleared. The records of all files are published at once, only if every file is loaded.
+     *
+     * @param zoneFiles zonefile path of each domain name
+     * @throws IOException if unable to open or parse one of the files
+     */
+    public void fromZoneFiles(Map<String, Path> zoneFiles) throws IOException {
+        Map<Name, Path> origins = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> e : zoneFiles.entrySet()) {
+            origins.put(ZoneLoader.toOrigin(e.getKey()), e.getValue());
+        }
+        if (origins.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(origins.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            synchronized (writeLock) {
+                RecordStore.Builder builder = sharedBuilder();
+                List<Future<Long>> loads = new ArrayList<>();
+                for (Map.Entry<Name, Path> e : origins.entrySet()) {
+                    loads.add(executor.submit(() -> ZoneLoader.load(e.getKey(), ZoneLoader.open(e.getValue()),
+                            batch -> {
+                                synchronized (builder) {
+                                    builder.addAll(batch);
+                                }
+                            })));
+                }
+                long count = 0;
+                for (Future<Long> f : loads) {
+                    count += f.get();
+                }
+                synchronized (builder) {
+                    responseRecords = builder.build();
+                }
+                logger.debug("Loaded {} records of {} zones", count, origins.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load a zone file as a separate zone, replacing the zone previously loaded with the same domain.
+     * Gzipped files are detected and decompressed.
+     * <p>
+     * Each zone has its own index, and queries are routed to the zone with the longest apex enclosing the name, so
+     * the cost of a query does not depend on the other zones. Inside a zone, names missing from it get NXDOMAIN, even
+     * if the shared records list has them or the zone has no record at its apex. Zones are loaded, replaced and
+     * dropped independently, without blocking the queries or the changes to other zones. CNAME chains are followed
+     * within the zone of the name queried.
+     *
+     * @param domain   domain name, the zone apex
+     * @param zoneFile zonefile path
+     * @throws IOException if unable to open or parse the file
+     * @see #dropZone(String)
+     */
+    public void loadZone(String domain, Path zoneFile) throws IOException {
+        Name origin = ZoneLoader.toOrigin(domain);
+        long count;
+        if (compactZones) {
+            CompactRecordStore.Builder builder = new CompactRecordStore.Builder();
+            count = ZoneLoader.load(origin, ZoneLoader.open(zoneFile), builder::addAll);
+            putZone(origin, builder.build());
+        } else {
+            RecordStore.Builder builder = RecordStore.EMPTY.toBuilder();
+            count = ZoneLoader.load(origin, ZoneLoader.open(zoneFile), builder::addAll);
+            putZone(origin, builder.build());
+        }
+        logger.debug("Loaded {} records of zone '{}'", count, origin);
+    }
+
+    /**
+     * Load the records made by a zone generator as a separate zone, replacing the zone previously loaded with the
+     * same apex. The records are streamed into the zone as they are generated.
+     *
+     * @param generator the generator
+     * @see #loadZone(String, Path)
+     * @see ZoneGenerator
+     */
+    public void loadZone(ZoneGenerator generator) {
+        long count;
+        if (compactZones) {
+            CompactRecordStore.Builder builder = new CompactRecordStore.Builder();
+            count = generator.generate(builder::addAll);
+            putZone(generator.getOrigin(), builder.build());
+        } else {
+            RecordStore.Builder builder = RecordStore.EMPTY.toBuilder();
+            count = generator.generate(builder::addAll);
+            putZone(generator.getOrigin(), builder.build());
+        }
+        logger.debug("Generated {} records of zone '{}'", count, generator.getOrigin());
+    }
+
+    /**
+     * Set the records of a separate zone, replacing the zone previously loaded with the same domain.
+     *
+     * @param domain  domain name, the zone apex
+     * @param records records of the zone
+     * @throws TextParseException if the domain is not a valid name
+     * @see #loadZone(String, Path)
+     */
+    public void loadZone(String domain, Collection<Record> records) throws TextParseException {
+        Name origin = ZoneLoader.toOrigin(domain);
+        putZone(origin, compactZones ? CompactRecordStore.of(records) : RecordStore.of(records));
+    }
+
+    /**
+     * Drop a zone loaded with {@link #loadZone(String, Path)}.
+     *
+     * @param domain domain name, the zone apex
+     * @return true if the zone was loaded
+     * @throws TextParseException if the domain is not a valid name
+     */
+    public boolean dropZone(String domain) throws TextParseException {
+        return removeZone(ZoneLoader.toOrigin(domain));
+    }
+
+    /**
+     * Returns the apex of the zones loaded with {@link #loadZone(String, Path)}.
+     *
+     * @return read-only set, reflecting later changes
+     */
+    public Set<Name> getZones() {
+        return Collections.unmodifiableSet(zones.keySet());
+    }
+
+    /**
+     * Returns the records of a zone loaded with {@link #loadZone(String, Path)}.
+     *
+     * @param domain domain name, the zone apex
+     * @return read-only list, or an empty list if the zone is not loaded
+     * @throws TextParseException if the domain is not a valid name
+     */
+    public List<Record> getZoneRecords(String domain) throws TextParseException {
+        RecordSource zone = zones.get(ZoneLoader.toOrigin(domain));
+        return zone == null ? Collections.emptyList() : zone.getRecords();
+    }
+
+    /**
+     * Load a zone file as a separate zone, like {@link #loadZone(String, Path)}, and keep watching it. Whenever the
+     * file changes, the difference to the records loaded before is applied at once, queries see either the old or the
+     * new zone. Once a zone with the same domain is loaded or dropped, the changes of the file are no longer applied.
+     * Gzipped files are detected and decompressed.
+     *
+     * @param domain   domain name
+     * @param zoneFile zonefile path
+     * @return the watch, close it to stop watching
+     * @throws IOException if unable to open or parse the file, or to watch it
+     * @see ZoneWatch
+     */
+    public ZoneWatch watchZoneFile(String domain, Path zoneFile) throws IOException {
+        return ZoneWatch.start(this, ZoneLoader.toOrigin(domain), zoneFile);
+    }
+
+    /**
+     * Removes and adds records, publishing the changes at once.
+     *
+     * @param removed records to remove, one occurrence each
+     * @param added   records to add
+     */
+    void applyDiff(Collection<Record> removed, Collection<Record> added) {
+        synchronized (writeLock) {
+            responseRecords = sharedBuilder().removeAll(removed).addAll(added).build();
         }
     }
 
+    /**
+     * Returns the current snapshot of the shared records.
+     *
+     * @return the snapshot
+     */
+    RecordStore getSharedRecords() {
+        return responseRecords;
+    }
+
+    /**
+     * Starts a change of the shared records, reporting the records added and the RRsets removed to the TTL decay when
+     * enabled.
+     * Must be called holding the write lock.
+     *
+     * @return the builder
+     */
+    private RecordStore.Builder sharedBuilder() {
+        return sharedBuilder(responseRecords);
+    }
+
+    private RecordStore.Builder sharedBuilder(RecordStore base) {
+        TtlDecay d = ttlDecay;
+        return d == null ? base.toBuilder() : base.toBuilder().onAdd(d::register).onRemoveRRset(d::forget);
+    }
+
     /**
      * Generate N txt records with random strings.
      *
@@ -274,14 +1100,15 @@ public class FakeResolver implements Resolver {
      * @return the list of records generated
      */
     public static List<Record> genNRandomTXTRecords(String name, int count) {
+        Name owner;
+        try {
+            owner = Name.fromString(name);
+        } catch (TextParseException e) {
+            throw new IllegalArgumentException(e);
+        }
         return IntStream.range(0, count)
-                .mapToObj(i -> {
-                    try {
-                        return genRandomTXTRecord(Name.fromString(name));
-                    } catch (TextParseException e) {
-                        throw new IllegalArgumentException(e);
-                    }
-                }).collect(Collectors.toList());
+                .mapToObj(i -> genRandomTXTRecord(owner))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -302,27 +1129,415 @@ public class FakeResolver implements Resolver {
     }
 
     /**
-     * Build a DNS message from the list of records from matching the query.
+     * Build a DNS message from the indexed records matching the query name, type and class.
+     * When answer templates are enabled, the answers to names that exist are built once per snapshot and copied
+     * afterward. Names matching a wildcard are always built, so random names do not fill the templates.
      *
+     * @param store the records snapshot
      * @param query the dns query
      * @return the dns answer
      */
-    private Message buildMessage(Message query) {
-        Message response = new Message(query.getHeader().getID());
-        response.addRecord(query.getQuestion(), Section.QUESTION);
+    private Message buildMessage(RecordSource store, Message query) {
+        Record question = query.getQuestion();
+        Message response;
+        if (answerTemplates && answerRotation == null && rotations.isEmpty()) {
+            RecordKey key = RecordKey.of(question);
+            Message template = store.getAnswerTemplate(key);
+            if (template == null) {
+                template = buildAnswer(store, question);
+                if (store.nameExists(question.getName())) {
+                    store.putAnswerTemplate(key, template);
+                }
+            }
+            response = template.clone();
+        } else {
+            response = buildAnswer(store, question);
+        }
+        response.getHeader().setID(query.getHeader().getID());
+        response.addRecord(question, Section.QUESTION);
+        return response;
+    }
+
+    /**
+     * Build a DNS message with the answer and authority sections for the question, without the question section.
+     * CNAME and DNAME chains are followed while their targets are served internally, wildcards are expanded, and the
+     * addresses of the names referenced by the answers (e.g. MX and NS targets) are added to the additional section.
+     * A name that does not exist gets NXDOMAIN, a name without records of the type gets an empty answer (NODATA),
+     * both with the SOA of the enclosing zone in the authority section.
+     *
+     * @param store    the records snapshot
+     * @param question the question
+     * @return the dns answer
+     */
+    private Message buildAnswer(RecordSource store, Record question) {
+        Message response = new Message(0);
         response.getHeader().setRcode(Rcode.NOERROR);
-        for (Record r : responseRecords) {
-            if (query.getQuestion().getName().toString().equals(r.getName().toString())
-                    && (query.getQuestion().getType() == r.getType() ||
-                    (query.getQuestion().getType() == Type.A && r.getType() == Type.CNAME))) {
-                response.addRecord(r, Section.ANSWER);
+        int type = question.getType();
+        int dclass = question.getDClass();
+        Name name = question.getName();
+        Set<Name> visited = null;
+        for (int i = 0; i < MAX_CHAIN_LENGTH; i++) {
+            Name owner = name;
+            Name target = null;
+            if (!store.nameExists(name)) {
+                target = followDNAME(store, response, name, dclass);
+                if (target == null && response.getRcode() == Rcode.NOERROR) {
+                    owner = store.findWildcard(name);
+                    if (owner == null) {
+                        response.getHeader().setRcode(Rcode.NXDOMAIN);
+                        addSOA(store, response, name, dclass);
+                        break;
+                    }
+                }
+            }
+            if (target == null) {
+                List<Record> found = store.lookup(owner, type, dclass);
+                if (!found.isEmpty()) {
+                    found = rotate(store, found, owner, type, dclass);
+                    addAnswers(store, response, synthesize(found, owner, name), dclass);
+                    break;
+                }
+                if (type != Type.CNAME) {
+                    target = followCNAME(store, response, name, owner, dclass);
+                }
+                if (target == null) {
+                    if (response.getRcode() == Rcode.NOERROR) {
+                        addSOA(store, response, name, dclass);
+                    }
+                    break;
+                }
+            }
+            if (visited == null) {
+                visited = new HashSet<>();
+                visited.add(name);
+            }
+            if (!visited.add(target)) {
+                logger.warn("Alias loop found resolving '{}' at '{}'", question.getName(), target);
+                break;
             }
+            if (!store.isInternal(target)) {
+                break;
+            }
+            name = target;
         }
         return response;
     }
 
+    /**
+     * Adds the CNAME owned by the name, or by the wildcard covering it, to the answer.
+     *
+     * @param store    the records snapshot
+     * @param response the dns answer
+     * @param name     the name being resolved
+     * @param owner    the owner of the records, the name itself or a wildcard
+     * @param dclass   the record class
+     * @return the alias target, or null if there is no alias
+     */
+    private Name followCNAME(RecordSource store, Message response, Name name, Name owner, int dclass) {
+        List<Record> cnames = store.lookup(owner, Type.CNAME, dclass);
+        if (cnames.isEmpty()) {
+            return null;
+        }
+        CNAMERecord cname = (CNAMERecord) cnames.get(0);
+        response.addRecord(owner == name ? cname : cname.withName(name), Section.ANSWER);
+        return cname.getTarget();
+    }
+
+    /**
+     * Adds the DNAME owned by one of the ancestors of the name, along with the synthesized CNAME, to the answer.
+     *
+     * @param store    the records snapshot
+     * @param response the dns answer
+     * @param name     the name being resolved
+     * @param dclass   the record class
+     * @return the alias target, or null if there is no DNAME or the resulting name is too long (YXDOMAIN)
+     */
+    private Name followDNAME(RecordSource store, Message response, Name name, int dclass) {
+        if (!store.hasType(Type.DNAME)) {
+            return null;
+        }
+        for (int i = 1; i < name.labels() - 1; i++) {
+            List<Record> dnames = store.lookup(new Name(name, i), Type.DNAME, dclass);
+            if (!dnames.isEmpty()) {
+                DNAMERecord dname = (DNAMERecord) dnames.get(0);
+                response.addRecord(dname, Section.ANSWER);
+                try {
+                    Name target = name.fromDNAME(dname);
+                    response.addRecord(new CNAMERecord(name, dclass, dname.getTTL(), target), Section.ANSWER);
+                    return target;
+                } catch (NameTooLongException e) {
+                    response.getHeader().setRcode(Rcode.YXDOMAIN);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Orders an RRset with the rotation policy set for it, or with the default policy.
+     *
+     * @param store  the records snapshot
+     * @param rrset  the records found
+     * @param owner  the owner of the records
+     * @param type   the record type
+     * @param dclass the record class
+     * @return the records to answer
+     */
+    private List<Record> rotate(RecordSource store, List<Record> rrset, Name owner, int type, int dclass) {
+        AnswerRotation rotation = rotations.isEmpty() ? answerRotation
+                : rotations.getOrDefault(new RecordKey(owner, type, dclass), answerRotation);
+        if (rotation == null) {
+            return rrset;
+        }
+        int counter = rotation.isRoundRobin() ? store.nextRotation(owner, type, dclass) : 0;
+        return rotation.apply(rrset, counter);
+    }
+
+    /**
+     * Renames the records owned by a wildcard to the name queried.
+     *
+     * @param records the records found
+     * @param owner   the owner of the records, the name itself or a wildcard
+     * @param name    the name queried
+     * @return the records, renamed if owned by a wildcard
+     */
+    private static List<Record> synthesize(List<Record> records, Name owner, Name name) {
+        if (owner == name) {
+            return records;
+        }
+        List<Record> synthesized = new ArrayList<>(records.size());
+        for (Record r : records) {
+            synthesized.add(r.withName(name));
+        }
+        return synthesized;
+    }
+
+    /**
+     * Adds the SOA of the zone enclosing the name to the authority section, so negative answers can be cached.
+     *
+     * @param store    the records snapshot
+     * @param response the dns answer
+     * @param name     the name without records
+     * @param dclass   the record class
+     */
+    private void addSOA(RecordSource store, Message response, Name name, int dclass) {
+        if (!store.hasType(Type.SOA)) {
+            return;
+        }
+        for (int i = 0; i < name.labels(); i++) {
+            List<Record> soa = store.lookup(i == 0 ? name : new Name(name, i), Type.SOA, dclass);
+            if (!soa.isEmpty()) {
+                response.addRecord(soa.get(0), Section.AUTHORITY);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the records to the answer section, and the addresses of the names they reference to the additional section.
+     *
+     * @param store    the records snapshot
+     * @param response the dns answer
+     * @param answers  the records
+     * @param dclass   the record class
+     */
+    private void addAnswers(RecordSource store, Message response, List<Record> answers, int dclass) {
+        for (Record r : answers) {
+            response.addRecord(r, Section.ANSWER);
+        }
+        for (Record r : answers) {
+            Name additional = r.getAdditionalName();
+            if (additional == null) {
+                continue;
+            }
+            for (int type : ADDRESS_TYPES) {
+                for (Record glue : store.lookup(additional, type, dclass)) {
+                    if (!response.findRecord(glue, Section.ADDITIONAL)) {
+                        response.addRecord(glue, Section.ADDITIONAL);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the order in which the records of every RRset are answered, unless a policy is set for the RRset itself.
+     * Answer templates are not used while rotating.
+     *
+     * @param rotation the policy, or null to answer the records in the order they were added
+     * @see #setAnswerRotation(Name, int, AnswerRotation)
+     */
+    public void setAnswerRotation(AnswerRotation rotation) {
+        this.answerRotation = rotation;
+    }
+
+    /**
+     * Sets the order in which the records of an RRset are answered, overriding the default policy.
+     *
+     * @param name     owner name
+     * @param type     record type
+     * @param rotation the policy, or null to remove the policy of the RRset
+     */
+    public void setAnswerRotation(Name name, int type, AnswerRotation rotation) {
+        RecordKey key = new RecordKey(name, type, DClass.IN);
+        if (rotation == null) {
+            rotations.remove(key);
+        } else {
+            rotations.put(key, rotation);
+        }
+    }
+
+    /**
+     * Returns the default order in which the records of an RRset are answered.
+     *
+     * @return the policy, or null if the records are answered in the order they were added
+     */
+    public AnswerRotation getAnswerRotation() {
+        return answerRotation;
+    }
+
+    /**
+     * Enables the answer templates. Each distinct answer is built once from the records and then copied for every
+     * query asking the same name, type and class, avoiding the index lookups and record insertion per query.
+     * Templates are discarded whenever the records change.
+     *
+     * @param enabled true to reuse prebuilt answers
+     */
+    public void setAnswerTemplates(boolean enabled) {
+        this.answerTemplates = enabled;
+    }
+
+    /**
+     * Returns whether answer templates are enabled.
+     *
+     * @return true if prebuilt answers are reused
+     */
+    public boolean isAnswerTemplates() {
+        return answerTemplates;
+    }
+
+    /**
+     * Stores the zones loaded afterward with {@link #loadZone(String, Path)} packed in wire format off the heap,
+     * for zones of millions of records. The heap only holds a primitive index of a few dozen bytes per record, and
+     * {@link Record} objects are created only for the RRsets looked up by the queries, so large zones no longer
+     * weigh on the garbage collector; in exchange each answer decodes its records again, unless answer templates
+     * are enabled. The records returned by {@link #getZoneRecords(String)} are decoded on access.
+     *
+     * @param enabled true to store the next zones off the heap
+     */
+    public void setCompactZones(boolean enabled) {
+        this.compactZones = enabled;
+    }
+
+    /**
+     * Returns whether zones are stored off the heap.
+     *
+     * @return true if the next zones loaded are stored off the heap
+     */
+    public boolean isCompactZones() {
+        return compactZones;
+    }
+
+    /**
+     * The queries of a batch sent to the external resolver. Each of the concurrent slots sends the next pending query
+     * when its previous one completes, looping instead of recursing when responses are already available.
+     */
+    private final class ExternalBatch {
+        private final Message[] queries;
+        private final Message[] responses;
+        private final int[] misses;
+        private final Function<Message, CompletionStage<Message>> upstream;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<Message>> result = new CompletableFuture<>();
+
+        private ExternalBatch(Message[] queries, Message[] responses, int[] misses,
+                              Function<Message, CompletionStage<Message>> upstream) {
+            this.queries = queries;
+            this.responses = responses;
+            this.misses = misses;
+            this.upstream = upstream;
+            this.remaining = new AtomicInteger(misses.length);
+        }
+
+        private CompletionStage<List<Message>> start(int concurrency) {
+            for (int i = 0; i < Math.min(concurrency, misses.length); i++) {
+                sendNext();
+            }
+            return result;
+        }
+
+        private void sendNext() {
+            int k;
+            while (!result.isDone() && (k = next.getAndIncrement()) < misses.length) {
+                int index = misses[k];
+                CompletableFuture<Message> response;
+                try {
+                    response = sendExternallyAsync(queries[index], upstream).toCompletableFuture();
+                } catch (RuntimeException e) {
+                    response = CompletableFuture.failedFuture(e);
+                }
+                if (!response.isDone()) {
+                    response.whenComplete((r, ex) -> {
+                        if (complete(index, r, ex)) {
+                            sendNext();
+                        }
+                    });
+                    return;
+                }
+                Message r = null;
+                Throwable ex = null;
+                try {
+                    r = response.join();
+                } catch (CompletionException | CancellationException e) {
+                    ex = e;
+                }
+                if (!complete(index, r, ex)) {
+                    return;
+                }
+            }
+        }
+
+        private boolean complete(int index, Message response, Throwable ex) {
+            if (ex != null) {
+                result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                        ? ex.getCause() : ex);
+                return false;
+            }
+            responses[index] = response;
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(Arrays.asList(responses));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Holder of the virtual-thread-per-task executor, created through reflection so the library still runs on
+     * releases older than Java 21.
+     */
+    private static final class VirtualThreads {
+        private static final Executor EXECUTOR = create();
+
+        private static Executor executor() {
+            if (EXECUTOR == null) {
+                throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+            }
+            return EXECUTOR;
+        }
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+
     @Override
     public String toString() {
-        return "FakeResolver [records=" + responseRecords.size() + "]";
+        return "FakeResolver [records=" + responseRecords.size() + ", zones=" + zones.size() + "]";
     }
 }
\ No newline at end of file
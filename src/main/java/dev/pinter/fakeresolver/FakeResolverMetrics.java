@@ -0,0 +1,215 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Type;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Query counters and latencies of one or more {@link FakeResolver} instances.
+ * <p>
+ * Counters are striped {@link LongAdder}s, so recording from concurrent queries does not contend.
+ * Use {@link #snapshot()} to read a consistent copy, e.g. to assert that a test did not send queries to real DNS.
+ *
+ * @see FakeResolver#setMetrics(FakeResolverMetrics)
+ */
+public final class FakeResolverMetrics {
+    private final LongAdder internalHits = new LongAdder();
+    private final LongAdder internalNoData = new LongAdder();
+    private final LongAdder internalNxDomain = new LongAdder();
+    private final LongAdder externalFallbacks = new LongAdder();
+    private final Map<Integer, LongAdder> queriesByType = new ConcurrentHashMap<>();
+    private final LatencyHistogram localLatency = new LatencyHistogram();
+    private final LatencyHistogram externalLatency = new LatencyHistogram();
+
+    /**
+     * Creates metrics with all counters at zero.
+     */
+    public FakeResolverMetrics() {
+    }
+
+    /**
+     * Records a query answered internally.
+     *
+     * @param type     query type
+     * @param rcode    response code of the answer
+     * @param answered true if the answer section is not empty
+     * @param nanos    time taken to build the answer
+     */
+    void recordInternal(int type, int rcode, boolean answered, long nanos) {
+        countType(type);
+        if (rcode == Rcode.NXDOMAIN) {
+            internalNxDomain.increment();
+        } else if (answered) {
+            internalHits.increment();
+        } else {
+            internalNoData.increment();
+        }
+        localLatency.record(nanos);
+    }
+
+    /**
+     * Records a query sent to the external resolver.
+     *
+     * @param type query type
+     */
+    void recordExternal(int type) {
+        countType(type);
+        externalFallbacks.increment();
+    }
+
+    /**
+     * Records the time taken by a query sent to the external resolver.
+     *
+     * @param nanos time taken since the query was received
+     */
+    void recordExternalLatency(long nanos) {
+        externalLatency.record(nanos);
+    }
+
+    private void countType(int type) {
+        queriesByType.computeIfAbsent(type, t -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns a copy of the current values.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> byType = new TreeMap<>();
+        queriesByType.forEach((type, count) -> byType.put(Type.string(type), count.sum()));
+        return new Snapshot(internalHits.sum(), internalNoData.sum(), internalNxDomain.sum(), externalFallbacks.sum(),
+                byType, localLatency.copy(), externalLatency.copy());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Values of the metrics at a point in time.
+     */
+    public static final class Snapshot {
+        private final long internalHits;
+        private final long internalNoData;
+        private final long internalNxDomain;
+        private final long externalFallbacks;
+        private final Map<String, Long> queriesByType;
+        private final LatencyHistogram localLatency;
+        private final LatencyHistogram externalLatency;
+
+        private Snapshot(long internalHits, long internalNoData, long internalNxDomain, long externalFallbacks,
+                         Map<String, Long> queriesByType, LatencyHistogram localLatency,
+                         LatencyHistogram externalLatency) {
+            this.internalHits = internalHits;
+            this.internalNoData = internalNoData;
+            this.internalNxDomain = internalNxDomain;
+            this.externalFallbacks = externalFallbacks;
+            this.queriesByType = Collections.unmodifiableMap(queriesByType);
+            this.localLatency = localLatency;
+            this.externalLatency = externalLatency;
+        }
+
+        /**
+         * Returns the number of queries answered internally with records.
+         *
+         * @return count
+         */
+        public long getInternalHits() {
+            return internalHits;
+        }
+
+        /**
+         * Returns the number of queries answered internally without records for a name that exists (NODATA).
+         *
+         * @return count
+         */
+        public long getInternalNoData() {
+            return internalNoData;
+        }
+
+        /**
+         * Returns the number of queries answered internally with NXDOMAIN.
+         *
+         * @return count
+         */
+        public long getInternalNxDomain() {
+            return internalNxDomain;
+        }
+
+        /**
+         * Returns the number of queries sent to the external resolver.
+         *
+         * @return count
+         */
+        public long getExternalFallbacks() {
+            return externalFallbacks;
+        }
+
+        /**
+         * Returns the number of queries received.
+         *
+         * @return count
+         */
+        public long getQueries() {
+            return internalHits + internalNoData + internalNxDomain + externalFallbacks;
+        }
+
+        /**
+         * Returns the number of queries received by type mnemonic, e.g. "A" or "MX".
+         *
+         * @return read-only map
+         */
+        public Map<String, Long> getQueriesByType() {
+            return queriesByType;
+        }
+
+        /**
+         * Returns the latencies of the queries answered internally.
+         *
+         * @return histogram
+         */
+        public LatencyHistogram getLocalLatency() {
+            return localLatency;
+        }
+
+        /**
+         * Returns the latencies of the queries sent to the external resolver, including the time spent waiting for it.
+         *
+         * @return histogram
+         */
+        public LatencyHistogram getExternalLatency() {
+            return externalLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "FakeResolverMetrics [internalHits=" + internalHits + ", internalNoData=" + internalNoData
+                    + ", internalNxDomain=" + internalNxDomain + ", externalFallbacks=" + externalFallbacks
+                    + ", queriesByType=" + queriesByType + ", localLatency=" + localLatency
+                    + ", externalLatency=" + externalLatency + "]";
+        }
+    }
+}
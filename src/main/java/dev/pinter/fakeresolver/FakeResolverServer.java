@@ -0,0 +1,505 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Header;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A DNS server answering UDP and TCP queries with a resolver, usually a {@link FakeResolver}, so clients that are not
+ * dnsjava (e.g. the system resolver, Netty or Go) can query the same records.
+ * <p>
+ * A single thread serves both transports with a selector. UDP datagrams are received into a direct buffer until the
+ * socket is drained, and the responses of the batch are sent together. TCP connections accept pipelined queries:
+ * every complete query read is dispatched at once, and responses are written back as they complete, not necessarily
+ * in the order asked. Queries are answered with {@link Resolver#sendAsync(Message)}, so names resolved externally do
+ * not stall the other clients.
+ */
+public class FakeResolverServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FakeResolverServer.class);
+
+    private static final int UDP_SIZE = 512;
+    private static final int MAX_MESSAGE_SIZE = 65535;
+    private static final int BIND_ATTEMPTS = 16;
+
+    private final Resolver resolver;
+    private final Selector selector;
+    private final DatagramChannel udp;
+    private final ServerSocketChannel tcp;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_MESSAGE_SIZE);
+    private final List<Datagram> batch = new ArrayList<>();
+    private final Queue<Datagram> pendingDatagrams = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingConnections = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private FakeResolverServer(Resolver resolver, Selector selector, DatagramChannel udp, ServerSocketChannel tcp) {
+        this.resolver = resolver;
+        this.selector = selector;
+        this.udp = udp;
+        this.tcp = tcp;
+        this.thread = new Thread(this::run, "fakeresolver-server-" + getPort());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts a server on an ephemeral port of the loopback address, see {@link #getPort()}.
+     *
+     * @param resolver resolver answering the queries
+     * @return the running server
+     * @throws IOException if unable to bind the sockets
+     */
+    public static FakeResolverServer start(Resolver resolver) throws IOException {
+        return start(resolver, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * Starts a server listening for UDP and TCP on the same address. When the port is 0, an ephemeral port free for
+     * both protocols is chosen.
+     *
+     * @param resolver resolver answering the queries
+     * @param address  address to listen on
+     * @return the running server
+     * @throws IOException if unable to bind the sockets
+     */
+    public static FakeResolverServer start(Resolver resolver, InetSocketAddress address) throws IOException {
+        if (resolver == null) {
+            throw new IllegalArgumentException("Invalid resolver");
+        }
+        Selector selector = Selector.open();
+        DatagramChannel udp = null;
+        ServerSocketChannel tcp = null;
+        try {
+            for (int i = 0; tcp == null; i++) {
+                udp = DatagramChannel.open(address.getAddress() instanceof Inet6Address
+                        ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+                udp.bind(address);
+                InetSocketAddress bound = (InetSocketAddress) udp.getLocalAddress();
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                try {
+                    channel.bind(bound);
+                    tcp = channel;
+                } catch (IOException e) {
+                    channel.close();
+                    udp.close();
+                    if (address.getPort() != 0 || i + 1 == BIND_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+            udp.configureBlocking(false);
+            tcp.configureBlocking(false);
+            udp.register(selector, SelectionKey.OP_READ);
+            tcp.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            if (udp != null) {
+                udp.close();
+            }
+            if (tcp != null) {
+                tcp.close();
+            }
+            selector.close();
+            throw e;
+        }
+        FakeResolverServer server = new FakeResolverServer(resolver, selector, udp, tcp);
+        server.thread.start();
+        logger.debug("Listening on {}", server.getAddress());
+        return server;
+    }
+
+    /**
+     * Returns the address the server is listening on, for both UDP and TCP.
+     *
+     * @return the address
+     */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(tcp.socket().getInetAddress(), tcp.socket().getLocalPort());
+    }
+
+    /**
+     * Returns the port the server is listening on, for both UDP and TCP.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return tcp.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the server, closing the sockets and the open connections.
+     *
+     * @throws IOException if interrupted while waiting for the server thread
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while stopping the server");
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                sendDatagrams();
+                registerWrites();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udp) {
+                        receiveDatagrams();
+                    } else {
+                        serve(key);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Server failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close selector", e);
+            }
+        }
+    }
+
+    /**
+     * Accepts the pending connections. A connection that cannot be set up is closed, the listening socket is kept.
+     */
+    private void accept() {
+        SocketChannel channel;
+        while ((channel = acceptConnection()) != null) {
+            try {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                logger.debug("Unable to set up connection: {}", e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ce) {
+                    logger.debug("Unable to close channel", ce);
+                }
+            }
+        }
+    }
+
+    private SocketChannel acceptConnection() {
+        try {
+            return tcp.accept();
+        } catch (IOException e) {
+            logger.debug("Unable to accept connection: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads and writes a TCP connection. A connection failing for any reason is closed without affecting the others.
+     */
+    private void serve(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Closing connection: {}", e.toString());
+            closeQuietly(key);
+        }
+    }
+
+    /**
+     * Receives datagrams until the socket is drained, then sends the responses already available in one batch. A
+     * datagram that fails is dropped, the socket is kept open.
+     */
+    private void receiveDatagrams() {
+        SocketAddress client;
+        while ((client = receiveDatagram()) != null) {
+            receiveBuffer.flip();
+            byte[] wire = new byte[receiveBuffer.remaining()];
+            receiveBuffer.get(wire);
+            try {
+                answerDatagram(client, wire);
+            } catch (RuntimeException e) {
+                logger.debug("Dropped query from {}: {}", client, e.toString());
+            }
+        }
+        for (Datagram d : batch) {
+            send(d);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Receives a datagram into the receive buffer. A failure, e.g. an ICMP error reported for an earlier response,
+     * ends the current drain like an empty socket.
+     */
+    private SocketAddress receiveDatagram() {
+        try {
+            return udp.receive(receiveBuffer.clear());
+        } catch (IOException e) {
+            logger.debug("Unable to receive datagram: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void answerDatagram(SocketAddress client, byte[] wire) {
+        Message query = parse(wire);
+        if (query == null) {
+            return;
+        }
+        int maxSize = udpSize(query);
+        CompletableFuture<Message> future = answer(query);
+        if (future.isDone()) {
+            batch.add(new Datagram(client, future.join().toWire(maxSize)));
+        } else {
+            future.thenAccept(response -> {
+                pendingDatagrams.add(new Datagram(client, response.toWire(maxSize)));
+                selector.wakeup();
+            }).exceptionally(e -> {
+                logger.debug("Dropped response to {}: {}", client, e.toString());
+                return null;
+            });
+        }
+    }
+
+    private void sendDatagrams() {
+        Datagram d;
+        while ((d = pendingDatagrams.poll()) != null) {
+            send(d);
+        }
+    }
+
+    /**
+     * Sends a response. A response that cannot be sent, e.g. to an unreachable client, is dropped like a lost
+     * datagram, without affecting the socket or the other responses.
+     */
+    private void send(Datagram d) {
+        sendBuffer.clear();
+        sendBuffer.put(d.wire).flip();
+        try {
+            if (udp.send(sendBuffer, d.client) == 0) {
+                logger.debug("Dropped response to {}, socket buffer full", d.client);
+            }
+        } catch (IOException e) {
+            logger.debug("Dropped response to {}: {}", d.client, e.getMessage());
+        }
+    }
+
+    private void registerWrites() {
+        Connection connection;
+        while ((connection = pendingConnections.poll()) != null) {
+            if (connection.key.isValid()) {
+                connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Parses a query. Messages that cannot be parsed, responses and messages without a question are ignored.
+     */
+    private static Message parse(byte[] wire) {
+        try {
+            Message query = new Message(wire);
+            if (query.getHeader().getFlag(Flags.QR) || query.getQuestion() == null) {
+                return null;
+            }
+            return query;
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Ignoring invalid query: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private CompletableFuture<Message> answer(Message query) {
+        CompletableFuture<Message> future;
+        try {
+            future = resolver.sendAsync(query).toCompletableFuture();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((response, error) -> {
+            if (error != null) {
+                logger.debug("Unable to resolve '{}': {}", query.getQuestion().getName(), error.getMessage());
+                return errorResponse(query, Rcode.SERVFAIL);
+            }
+            Header header = response.getHeader();
+            header.setID(query.getHeader().getID());
+            header.setFlag(Flags.QR);
+            header.setFlag(Flags.RA);
+            if (query.getHeader().getFlag(Flags.RD)) {
+                header.setFlag(Flags.RD);
+            }
+            return response;
+        });
+    }
+
+    private static Message errorResponse(Message query, int rcode) {
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setRcode(rcode);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        return response;
+    }
+
+    private static int udpSize(Message query) {
+        OPTRecord opt = query.getOPT();
+        return opt == null ? UDP_SIZE : Math.max(UDP_SIZE, opt.getPayloadSize());
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.debug("Unable to close channel", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FakeResolverServer [address=" + getAddress() + ", resolver=" + resolver + "]";
+    }
+
+    private static final class Datagram {
+        private final SocketAddress client;
+        private final byte[] wire;
+
+        private Datagram(SocketAddress client, byte[] wire) {
+            this.client = client;
+            this.wire = wire;
+        }
+    }
+
+    /**
+     * A TCP connection, reading length-prefixed queries and writing the responses in the same framing.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(2 + MAX_MESSAGE_SIZE);
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private SelectionKey key;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads what is available and dispatches every complete query, so pipelined queries are answered
+         * concurrently.
+         */
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new ClosedChannelException();
+            }
+            in.flip();
+            while (in.remaining() >= 2) {
+                int length = in.getShort(in.position()) & 0xFFFF;
+                if (in.remaining() < 2 + length) {
+                    break;
+                }
+                byte[] wire = new byte[length];
+                in.position(in.position() + 2);
+                in.get(wire);
+                Message query = parse(wire);
+                if (query != null) {
+                    answer(query).thenAccept(this::queue).exceptionally(e -> {
+                        logger.debug("Dropped response: {}", e.toString());
+                        return null;
+                    });
+                }
+            }
+            in.compact();
+        }
+
+        private void queue(Message response) {
+            byte[] wire = response.toWire(MAX_MESSAGE_SIZE);
+            ByteBuffer frame = ByteBuffer.allocate(2 + wire.length);
+            frame.putShort((short) wire.length).put(wire).flip();
+            out.add(frame);
+            pendingConnections.add(this);
+            selector.wakeup();
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer frame;
+            while ((frame = out.peek()) != null) {
+                channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (!out.isEmpty()) {
+                pendingConnections.add(this);
+            }
+        }
+    }
+}
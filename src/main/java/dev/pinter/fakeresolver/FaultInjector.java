@@ -0,0 +1,218 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import java.io.Closeable;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Injects latency and failures into the responses of a {@link FakeResolver}, see
+ * {@link FakeResolver#setFaultInjector(FaultInjector)}.
+ * <p>
+ * Each query is checked against the rules in the order they were added, and the first rule matching its name and
+ * type decides the faults. Queries not matching any rule are answered normally. Delays and timeouts are scheduled on
+ * an executor instead of sleeping, so any number of delayed asynchronous queries can be in flight; the dependent
+ * stages of a delayed response run on the executor thread.
+ */
+public class FaultInjector implements Closeable {
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final Object rulesLock = new Object();
+    private volatile FaultRule[] rules = new FaultRule[0];
+    private volatile Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Creates an injector with its own scheduler thread.
+     */
+    public FaultInjector() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "fakeresolver-faults");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+        this.ownScheduler = true;
+    }
+
+    /**
+     * Creates an injector using a scheduler. The scheduler is not shut down when the injector is closed.
+     *
+     * @param scheduler executor used to delay the responses
+     */
+    public FaultInjector(ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler");
+        }
+        this.scheduler = scheduler;
+        this.ownScheduler = false;
+    }
+
+    /**
+     * Adds a rule, checked after the rules added before.
+     *
+     * @param rule the rule
+     * @return this injector
+     */
+    public FaultInjector addRule(FaultRule rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("Invalid rule");
+        }
+        synchronized (rulesLock) {
+            FaultRule[] current = rules;
+            FaultRule[] updated = new FaultRule[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = rule;
+            rules = updated;
+        }
+        return this;
+    }
+
+    /**
+     * Removes all rules, queries are answered normally afterward.
+     */
+    public void clearRules() {
+        synchronized (rulesLock) {
+            rules = new FaultRule[0];
+        }
+    }
+
+    /**
+     * Sets the time after which the queries selected to time out fail.
+     *
+     * @param timeout the timeout, the default is 10 seconds
+     */
+    public void setTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Invalid timeout");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the time after which the queries selected to time out fail.
+     *
+     * @return the timeout
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Applies the faults of the first rule matching the query.
+     *
+     * @param query  the dns query
+     * @param answer sends the query, only called when the response is not replaced by a fault
+     * @return the response, possibly delayed, truncated or replaced by an error
+     */
+    CompletionStage<Message> apply(Message query, Supplier<CompletionStage<Message>> answer) {
+        FaultRule rule = match(query.getQuestion());
+        if (rule == null) {
+            return answer.get();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double roll = random.nextDouble();
+        if (roll < rule.getTimeoutRate()) {
+            CompletableFuture<Message> response = new CompletableFuture<>();
+            Duration t = timeout;
+            scheduler.schedule(() -> response.completeExceptionally(
+                    new SocketTimeoutException("Timed out while trying to resolve " + query.getQuestion().getName())),
+                    t.toNanos(), TimeUnit.NANOSECONDS);
+            return response;
+        }
+        roll -= rule.getTimeoutRate();
+        CompletionStage<Message> response;
+        if (roll < rule.getServfailRate()) {
+            response = CompletableFuture.completedFuture(error(query, Rcode.SERVFAIL, false));
+        } else if (roll - rule.getServfailRate() < rule.getRefusedRate()) {
+            response = CompletableFuture.completedFuture(error(query, Rcode.REFUSED, false));
+        } else if (random.nextDouble() < rule.getTruncateRate()) {
+            response = answer.get().thenApply(r -> error(query, r.getRcode(), true));
+        } else {
+            response = answer.get();
+        }
+        LatencyDistribution latency = rule.getLatency();
+        if (latency == null) {
+            return response;
+        }
+        long delay = Math.max(0, latency.nextNanos(random));
+        return response.thenCompose(r -> {
+            CompletableFuture<Message> delayed = new CompletableFuture<>();
+            scheduler.schedule(() -> delayed.complete(r), delay, TimeUnit.NANOSECONDS);
+            return delayed;
+        });
+    }
+
+    private FaultRule match(Record question) {
+        for (FaultRule rule : rules) {
+            if (rule.matches(question)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a response without records.
+     *
+     * @param query     the dns query
+     * @param rcode     the response code
+     * @param truncated true to set the TC flag
+     * @return the response
+     */
+    private static Message error(Message query, int rcode, boolean truncated) {
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        if (truncated) {
+            response.getHeader().setFlag(Flags.TC);
+        }
+        response.getHeader().setRcode(rcode);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        return response;
+    }
+
+    /**
+     * Shuts down the scheduler created by this injector. Responses still delayed are never completed.
+     */
+    @Override
+    public void close() {
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FaultInjector [rules=" + rules.length + ", timeout=" + timeout + "]";
+    }
+}
@@ -0,0 +1,195 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * A rule of a {@link FaultInjector}, selecting queries by name and type and describing the faults injected into them.
+ * <p>
+ * Rules are immutable, each {@code with} method returns a new rule. The timeout, SERVFAIL and REFUSED rates are
+ * shares of all the queries matched, so they cannot add up to more than 1: with a timeout rate of 0.1 and a SERVFAIL
+ * rate of 0.2, 10% of the queries time out and 20% fail with SERVFAIL. The other queries get the real answer, and the
+ * truncate rate is the fraction of those answers truncated. The latency is added to every response that is not a
+ * timeout.
+ */
+public final class FaultRule {
+    private final Name name;
+    private final int type;
+    private final LatencyDistribution latency;
+    private final double timeoutRate;
+    private final double servfailRate;
+    private final double refusedRate;
+    private final double truncateRate;
+
+    private FaultRule(Name name, int type, LatencyDistribution latency, double timeoutRate, double servfailRate,
+                      double refusedRate, double truncateRate) {
+        this.name = name;
+        this.type = type;
+        this.latency = latency;
+        this.timeoutRate = timeoutRate;
+        this.servfailRate = servfailRate;
+        this.refusedRate = refusedRate;
+        this.truncateRate = truncateRate;
+    }
+
+    /**
+     * Creates a rule matching every query.
+     *
+     * @return the rule, without faults
+     */
+    public static FaultRule forAll() {
+        return new FaultRule(null, Type.ANY, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a rule matching the queries for a name and the names below it.
+     *
+     * @param name the name
+     * @return the rule, without faults
+     */
+    public static FaultRule forName(Name name) {
+        return forName(name, Type.ANY);
+    }
+
+    /**
+     * Creates a rule matching the queries for a type.
+     *
+     * @param type the record type
+     * @return the rule, without faults
+     */
+    public static FaultRule forType(int type) {
+        return new FaultRule(null, type, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a rule matching the queries for a type, at a name or below it.
+     *
+     * @param name the name
+     * @param type the record type, or {@link Type#ANY} for all types
+     * @return the rule, without faults
+     */
+    public static FaultRule forName(Name name, int type) {
+        if (name == null) {
+            throw new IllegalArgumentException("Invalid name");
+        }
+        return new FaultRule(name, type, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns a copy of this rule adding latency to the responses.
+     *
+     * @param latency the latency distribution, or null for no latency
+     * @return the new rule
+     */
+    public FaultRule withLatency(LatencyDistribution latency) {
+        return new FaultRule(name, type, latency, timeoutRate, servfailRate, refusedRate, truncateRate);
+    }
+
+    /**
+     * Returns a copy of this rule making a fraction of the queries time out. A timeout fails the query after the
+     * timeout of the injector, like a lost datagram.
+     *
+     * @param rate fraction of the queries, from 0 to 1, at most 1 with the other failure rates
+     * @return the new rule
+     */
+    public FaultRule withTimeoutRate(double rate) {
+        checkRates(checkRate(rate) + servfailRate + refusedRate);
+        return new FaultRule(name, type, latency, rate, servfailRate, refusedRate, truncateRate);
+    }
+
+    /**
+     * Returns a copy of this rule answering a fraction of the queries with SERVFAIL.
+     *
+     * @param rate fraction of the queries, from 0 to 1, at most 1 with the other failure rates
+     * @return the new rule
+     */
+    public FaultRule withServfailRate(double rate) {
+        checkRates(timeoutRate + checkRate(rate) + refusedRate);
+        return new FaultRule(name, type, latency, timeoutRate, rate, refusedRate, truncateRate);
+    }
+
+    /**
+     * Returns a copy of this rule answering a fraction of the queries with REFUSED.
+     *
+     * @param rate fraction of the queries, from 0 to 1, at most 1 with the other failure rates
+     * @return the new rule
+     */
+    public FaultRule withRefusedRate(double rate) {
+        checkRates(timeoutRate + servfailRate + checkRate(rate));
+        return new FaultRule(name, type, latency, timeoutRate, servfailRate, rate, truncateRate);
+    }
+
+    /**
+     * Returns a copy of this rule truncating a fraction of the responses: the records are dropped and the TC flag is
+     * set, as when the answer does not fit in a datagram.
+     *
+     * @param rate fraction of the answered queries, from 0 to 1
+     * @return the new rule
+     */
+    public FaultRule withTruncateRate(double rate) {
+        return new FaultRule(name, type, latency, timeoutRate, servfailRate, refusedRate, checkRate(rate));
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Invalid rate: " + rate);
+        }
+        return rate;
+    }
+
+    private static void checkRates(double failures) {
+        // rates summing to exactly 1 may round a bit above it
+        if (failures > 1 + 1e-9) {
+            throw new IllegalArgumentException("Failure rates add up to more than 1: " + failures);
+        }
+    }
+
+    boolean matches(Record question) {
+        return (type == Type.ANY || type == question.getType())
+                && (name == null || question.getName().subdomain(name));
+    }
+
+    LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    double getTimeoutRate() {
+        return timeoutRate;
+    }
+
+    double getServfailRate() {
+        return servfailRate;
+    }
+
+    double getRefusedRate() {
+        return refusedRate;
+    }
+
+    double getTruncateRate() {
+        return truncateRate;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultRule [name=" + (name == null ? "*" : name) + ", type=" + Type.string(type)
+                + ", timeout=" + timeoutRate + ", servfail=" + servfailRate + ", refused=" + refusedRate
+                + ", truncate=" + truncateRate + ", latency=" + (latency != null) + "]";
+    }
+}
@@ -0,0 +1,399 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map sharing its structure with the maps it was derived from, a hash array mapped trie.
+ * <p>
+ * Entries are kept in a tree of nodes of up to 32 children, each level indexed by the next 5 bits of the hash, so a
+ * change copies only the nodes on the path to the entry, a handful whatever the size of the map, instead of the whole
+ * map. A lookup walks the same path and allocates nothing. Keys with the same hash share a collision node.
+ * <p>
+ * A {@link Builder} changes in place the nodes it created itself, so loading many entries in one builder does not
+ * copy the path for each of them; nodes shared with a built map are copied before the first change.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class HashTrie<K, V> {
+    private static final HashTrie<?, ?> EMPTY = new HashTrie<>(null, 0);
+    private static final Object[] NO_ENTRIES = new Object[0];
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     * @return the map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root == null ? null : (V) root.find(key, hash(key), 0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Hands out every entry, in no particular order.
+     *
+     * @param action receives each key and value
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Creates a builder initialized with the entries of this map. The map itself is not modified.
+     *
+     * @return the builder
+     */
+    Builder<K, V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ h >>> 16;
+    }
+
+    static final class Builder<K, V> {
+        private final boolean[] changed = new boolean[1];
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * Returns the value of a key.
+         *
+         * @param key the key
+         * @return the value, or null if the key is not in the map
+         */
+        @SuppressWarnings("unchecked")
+        V get(Object key) {
+            return root == null ? null : (V) root.find(key, hash(key), 0);
+        }
+
+        /**
+         * Maps a key to a value, replacing the previous value.
+         *
+         * @param key   the key
+         * @param value the value, not null
+         * @return this builder
+         */
+        Builder<K, V> put(K key, V value) {
+            Node node = root == null ? new BitmapNode(edit, 0, NO_ENTRIES) : root;
+            changed[0] = false;
+            root = node.put(edit, key, hash(key), value, 0, changed);
+            if (changed[0]) {
+                size++;
+            }
+            return this;
+        }
+
+        /**
+         * Removes a key.
+         *
+         * @param key the key
+         * @return this builder
+         */
+        Builder<K, V> remove(Object key) {
+            if (root != null) {
+                changed[0] = false;
+                root = root.remove(edit, key, hash(key), 0, changed);
+                if (changed[0]) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Returns the map built so far. Later changes to the builder do not affect it.
+         *
+         * @return the map
+         */
+        HashTrie<K, V> build() {
+            edit = new Object();
+            return size == 0 ? empty() : new HashTrie<>(root, size);
+        }
+    }
+
+    private abstract static class Node {
+        private final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Object edit, Object key, int hash, Object value, int shift, boolean[] added);
+
+        abstract Node remove(Object edit, Object key, int hash, int shift, boolean[] removed);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+
+        boolean ownedBy(Object edit) {
+            return this.edit == edit;
+        }
+    }
+
+    /**
+     * A node with up to 32 slots, present slots flagged in a bitmap. Each slot holds a key and its value, or a null
+     * key and the child node of the entries sharing the bits of the slot.
+     */
+    private static final class BitmapNode extends Node {
+        private int bitmap;
+        private Object[] array;
+
+        private BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int bit = 1 << (hash >>> shift & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * Integer.bitCount(bitmap & bit - 1);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object edit, Object key, int hash, Object value, int shift, boolean[] added) {
+            int bit = 1 << (hash >>> shift & MASK);
+            int i = 2 * Integer.bitCount(bitmap & bit - 1);
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                added[0] = true;
+                return with(edit, bitmap | bit, a);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node node = child.put(edit, key, hash, value, shift + BITS, added);
+                return node == child ? this : set(edit, i, null, node);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : set(edit, i, k, value);
+            }
+            added[0] = true;
+            return set(edit, i, null, split(edit, k, hash(k), v, key, hash, value, shift + BITS));
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, boolean[] removed) {
+            int bit = 1 << (hash >>> shift & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * Integer.bitCount(bitmap & bit - 1);
+            Object k = array[i];
+            if (k == null) {
+                Node child = (Node) array[i + 1];
+                Node node = child.remove(edit, key, hash, shift + BITS, removed);
+                if (node == child) {
+                    return this;
+                }
+                if (node != null) {
+                    return set(edit, i, null, node);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            } else {
+                removed[0] = true;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, a.length - i);
+            return with(edit, bitmap ^ bit, a);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private Node with(Object edit, int bitmap, Object[] array) {
+            if (ownedBy(edit)) {
+                this.bitmap = bitmap;
+                this.array = array;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap, array);
+        }
+
+        private Node set(Object edit, int i, Object key, Object value) {
+            if (ownedBy(edit)) {
+                array[i] = key;
+                array[i + 1] = value;
+                return this;
+            }
+            Object[] a = array.clone();
+            a[i] = key;
+            a[i + 1] = value;
+            return new BitmapNode(edit, bitmap, a);
+        }
+
+        /**
+         * Creates the node of two entries whose hashes share the bits above the shift.
+         */
+        private static Node split(Object edit, Object k1, int h1, Object v1, Object k2, int h2, Object v2,
+                                  int shift) {
+            if (h1 == h2) {
+                return new CollisionNode(edit, h1, new Object[]{k1, v1, k2, v2});
+            }
+            boolean[] added = new boolean[1];
+            return new BitmapNode(edit, 0, NO_ENTRIES).put(edit, k1, h1, v1, shift, added)
+                    .put(edit, k2, h2, v2, shift, added);
+        }
+    }
+
+    /**
+     * The entries of keys with the same hash, scanned linearly.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private Object[] array;
+
+        private CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Object edit, Object key, int hash, Object value, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(edit, 1 << (this.hash >>> shift & MASK), new Object[]{null, this})
+                        .put(edit, key, hash, value, shift, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) {
+                        return this;
+                    }
+                    Object[] a = ownedBy(edit) ? array : array.clone();
+                    a[i + 1] = value;
+                    return ownedBy(edit) ? this : new CollisionNode(edit, hash, a);
+                }
+            }
+            Object[] a = new Object[array.length + 2];
+            System.arraycopy(array, 0, a, 0, array.length);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            added[0] = true;
+            if (ownedBy(edit)) {
+                array = a;
+                return this;
+            }
+            return new CollisionNode(edit, hash, a);
+        }
+
+        @Override
+        Node remove(Object edit, Object key, int hash, int shift, boolean[] removed) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    removed[0] = true;
+                    if (array.length == 2) {
+                        return null;
+                    }
+                    Object[] a = new Object[array.length - 2];
+                    System.arraycopy(array, 0, a, 0, i);
+                    System.arraycopy(array, i + 2, a, i, a.length - i);
+                    if (ownedBy(edit)) {
+                        array = a;
+                        return this;
+                    }
+                    return new CollisionNode(edit, hash, a);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribution of the latency added to the responses by a {@link FaultRule}.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /**
+     * Draws a latency.
+     *
+     * @param random source of randomness
+     * @return the latency, in nanoseconds
+     */
+    long nextNanos(Random random);
+
+    /**
+     * Creates a distribution always returning the same latency.
+     *
+     * @param latency the latency
+     * @return the distribution
+     */
+    static LatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Invalid latency");
+        }
+        return random -> nanos;
+    }
+
+    /**
+     * Creates a distribution of latencies uniformly spread between two values.
+     *
+     * @param min lowest latency
+     * @param max highest latency
+     * @return the distribution
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long low = min.toNanos();
+        long high = max.toNanos();
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Invalid latency range");
+        }
+        return random -> low + (long) (random.nextDouble() * (high - low));
+    }
+
+    /**
+     * Creates a log-normal distribution of latencies, the usual shape of network latencies: most responses are close
+     * to the median, with a long tail of slow ones.
+     *
+     * @param median median latency
+     * @param sigma  standard deviation of the logarithm of the latency, e.g. 0.5 makes the 99th percentile about three
+     *               times the median
+     * @return the distribution
+     */
+    static LatencyDistribution logNormal(Duration median, double sigma) {
+        long nanos = median.toNanos();
+        if (nanos < 0 || sigma < 0) {
+            throw new IllegalArgumentException("Invalid latency distribution");
+        }
+        return random -> (long) (nanos * Math.exp(sigma * random.nextGaussian()));
+    }
+}
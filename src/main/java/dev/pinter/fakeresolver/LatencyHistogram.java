@@ -0,0 +1,171 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds, with buckets spaced like an HDR histogram.
+ * <p>
+ * Values below 64 have their own bucket, above that every power of two is split in 32 buckets, so any recorded value
+ * is reported with a relative error below 3.2%. Recording is lock-free and never allocates.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - 6) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private volatile long maxValue;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(LatencyHistogram source) {
+        this.counts = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, source.counts.get(i));
+        }
+        this.count.add(source.count.sum());
+        this.sum.add(source.sum.sum());
+        this.maxValue = source.maxValue;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > maxValue) {
+            updateMax(value);
+        }
+    }
+
+    private synchronized void updateMax(long value) {
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the highest latency recorded.
+     *
+     * @param unit time unit
+     * @return the maximum, zero if empty
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxValue, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the mean of the latencies recorded.
+     *
+     * @param unit time unit
+     * @return the mean, zero if empty
+     */
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n / unit.toNanos(1);
+    }
+
+    /**
+     * Returns the latency below or at which the percentage of the recorded values fall.
+     *
+     * @param percentile percentile, between 0 and 100
+     * @param unit       time unit
+     * @return the latency, zero if empty
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile");
+        }
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return unit.convert(Math.min(highestValueOf(i), maxValue), TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(maxValue, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a copy of this histogram, not affected by later recordings.
+     *
+     * @return the copy
+     */
+    public LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - 6;
+        int top = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long top = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram [count=%d, mean=%.1fus, p50=%dus, p99=%dus, max=%dus]",
+                getCount(), getMean(TimeUnit.MICROSECONDS), getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+                getValueAtPercentile(99, TimeUnit.MICROSECONDS), getMax(TimeUnit.MICROSECONDS));
+    }
+}
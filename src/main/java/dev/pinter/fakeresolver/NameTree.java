@@ -0,0 +1,189 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
+
+/**
+ * Immutable tree of the owner names served, walked from the root label down.
+ * <p>
+ * Every owner name and all of its ancestors are nodes of the tree. Nodes are hashed by their full name, so going one
+ * label down is a single map access and a search costs time proportional to the number of labels of the name, not
+ * to the number of records. The map is a {@link HashTrie}, so a new tree shares all but the changed nodes with the
+ * tree it was built from. Each node holds the number of records owned by its name, zero for the ancestors that
+ * own nothing, and the number of records owned below it, so a node is dropped when its last record is removed.
+ * <p>
+ * An owner name is answered from its own node without allocating. Other names are walked from the root label down,
+ * and each ancestor is looked up with a new {@link Name}.
+ */
+final class NameTree {
+    static final NameTree EMPTY = new NameTree(HashTrie.empty());
+
+    private static final long BELOW = 1L << 32;
+
+    private static final Name WILDCARD = Name.fromConstantString("*");
+
+    private final HashTrie<Name, Long> nodes;
+
+    private NameTree(HashTrie<Name, Long> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Tests if the name, or one of its ancestors, is an owner name. A name that does not exist but is covered by a
+     * wildcard owner name, e.g. {@code x.example.} with {@code *.example.}, is also at or below an owner.
+     *
+     * @param name name to test
+     * @return true if the name is at or below an owner name
+     */
+    boolean isAtOrBelowOwner(Name name) {
+        Long self = nodes.get(name);
+        if (self != null && owners(self) > 0) {
+            return true;
+        }
+        Name parent = null;
+        for (int i = name.labels() - 1; i >= 0; i--) {
+            Name suffix = i == 0 ? name : new Name(name, i);
+            Long node = nodes.get(suffix);
+            if (node == null) {
+                return parent != null && getWildcard(parent) != null;
+            }
+            if (owners(node) > 0) {
+                return true;
+            }
+            parent = suffix;
+        }
+        return false;
+    }
+
+    /**
+     * Tests if the name is a node of the tree, i.e. an owner name or an ancestor of one (an empty non-terminal).
+     *
+     * @param name name to test
+     * @return result
+     */
+    boolean contains(Name name) {
+        return nodes.get(name) != null;
+    }
+
+    /**
+     * Returns the closest encloser of a name, the deepest node of the tree that is the name or one of its ancestors.
+     *
+     * @param name the name
+     * @return the closest encloser, or null if not even the root label is a node
+     */
+    Name closestEncloser(Name name) {
+        Name encloser = null;
+        for (int i = name.labels() - 1; i >= 0; i--) {
+            Name suffix = i == 0 ? name : new Name(name, i);
+            if (nodes.get(suffix) == null) {
+                break;
+            }
+            encloser = suffix;
+        }
+        return encloser;
+    }
+
+    /**
+     * Returns the wildcard owner name directly below a node.
+     *
+     * @param parent the node
+     * @return the wildcard name, or null if there is no wildcard owner below the node
+     */
+    Name getWildcard(Name parent) {
+        Name wildcard;
+        try {
+            wildcard = Name.concatenate(WILDCARD, parent);
+        } catch (NameTooLongException e) {
+            return null;
+        }
+        Long node = nodes.get(wildcard);
+        return node != null && owners(node) > 0 ? wildcard : null;
+    }
+
+    private static int owners(long node) {
+        return (int) node;
+    }
+
+    /**
+     * Creates a builder initialized with the nodes of this tree. The tree itself is not modified.
+     *
+     * @return the builder
+     */
+    Builder toBuilder() {
+        return new Builder(nodes.toBuilder());
+    }
+
+    static final class Builder {
+        private final HashTrie.Builder<Name, Long> nodes;
+
+        private Builder(HashTrie.Builder<Name, Long> nodes) {
+            this.nodes = nodes;
+        }
+
+        /**
+         * Adds an owner name, creating the missing ancestors.
+         *
+         * @param name owner name
+         * @return this builder
+         */
+        Builder add(Name name) {
+            increment(name, 1L);
+            for (int i = 1; i < name.labels(); i++) {
+                increment(new Name(name, i), BELOW);
+            }
+            return this;
+        }
+
+        /**
+         * Removes one record of an owner name, dropping the nodes left without records at or below them.
+         *
+         * @param name owner name
+         * @return false if the name owns no records
+         */
+        boolean remove(Name name) {
+            Long node = nodes.get(name);
+            if (node == null || owners(node) == 0) {
+                return false;
+            }
+            decrement(name, 1L);
+            for (int i = 1; i < name.labels(); i++) {
+                decrement(new Name(name, i), BELOW);
+            }
+            return true;
+        }
+
+        private void increment(Name name, long delta) {
+            Long node = nodes.get(name);
+            nodes.put(name, node == null ? delta : node + delta);
+        }
+
+        private void decrement(Name name, long delta) {
+            long node = nodes.get(name) - delta;
+            if (node == 0) {
+                nodes.remove(name);
+            } else {
+                nodes.put(name, node);
+            }
+        }
+
+        NameTree build() {
+            return new NameTree(nodes.build());
+        }
+    }
+}
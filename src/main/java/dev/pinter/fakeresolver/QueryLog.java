@@ -0,0 +1,422 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNSInput;
+import org.xbill.DNS.DNSOutput;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Binary log of the questions received by a {@link FakeResolver}, with the time they arrived and whether they were
+ * answered internally or sent to the external resolver. See {@link FakeResolver#setQueryLog(QueryLog)}.
+ * <p>
+ * Queries are appended to a bounded lock-free ring buffer without allocating, and a background thread drains it to the
+ * file, so the query path never waits for I/O. When the writer falls behind and the buffer is full, new entries are
+ * dropped and counted instead of slowing down the queries.
+ * <p>
+ * The file starts with the wall-clock time the log was opened. Each entry holds the time elapsed since the previous
+ * one as a zigzag varint, a flag byte, the type and class, and the name in uncompressed wire format.
+ */
+public class QueryLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(QueryLog.class);
+
+    private static final int MAGIC = 0x4652514C; // FRQL
+    private static final int VERSION = 1;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int INTERNAL = 1;
+    private static final int MAX_NAME = 255;
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final long startNanos;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final int[] questions;
+    private final boolean[] internal;
+    private final Name[] names;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread flusher;
+    private volatile long written;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Creates a log file, replacing an existing one, buffering up to 65536 entries.
+     *
+     * @param file log file
+     * @throws IOException if unable to create the file
+     */
+    public QueryLog(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a log file, replacing an existing one.
+     *
+     * @param file     log file
+     * @param capacity number of entries buffered before they are written, rounded up to a power of two
+     * @throws IOException if unable to create the file
+     */
+    public QueryLog(Path file, int capacity) throws IOException {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.file = file;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.times = new long[size];
+        this.questions = new int[size];
+        this.internal = new boolean[size];
+        this.names = new Name[size];
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        this.startNanos = System.nanoTime();
+        this.flusher = new Thread(this::flushLoop, "fakeresolver-querylog");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends a question to the buffer, or drops it if the buffer is full.
+     *
+     * @param name     name queried
+     * @param type     type queried
+     * @param dclass   class queried
+     * @param answered true if answered internally, false if sent to the external resolver
+     */
+    void record(Name name, int type, int dclass, boolean answered) {
+        if (closed) {
+            return;
+        }
+        long time = System.nanoTime() - startNanos;
+        long position = tail.get();
+        int index;
+        while (true) {
+            if (position == CLOSED) {
+                // closed after the check above, the entry can no longer be written
+                dropped.increment();
+                return;
+            }
+            index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        times[index] = time;
+        questions[index] = type << 16 | dclass;
+        internal[index] = answered;
+        names[index] = name;
+        sequences.set(index, position + 1);
+    }
+
+    private void flushLoop() {
+        DNSOutput wire = new DNSOutput();
+        long head = 0;
+        long previous = 0;
+        long end = -1;
+        try {
+            while (true) {
+                if (end < 0 && closed) {
+                    // no slot can be claimed from now on, the slots claimed before are waited for
+                    end = tail.getAndSet(CLOSED);
+                }
+                int drained = 0;
+                while (true) {
+                    int index = (int) head & mask;
+                    if (sequences.get(index) != head + 1) {
+                        break;
+                    }
+                    long time = times[index];
+                    writeVarLong(time - previous);
+                    previous = time;
+                    out.writeByte(internal[index] ? INTERNAL : 0);
+                    out.writeInt(questions[index]);
+                    wire.jump(0);
+                    names[index].toWire(wire, null);
+                    out.write(wire.toByteArray());
+                    names[index] = null;
+                    sequences.set(index, head + mask + 1);
+                    head++;
+                    drained++;
+                }
+                if (drained > 0) {
+                    out.flush();
+                    written += drained;
+                } else if (head == end) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            logger.warn("Unable to write query log '{}': {}", file, e.getMessage());
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    /**
+     * Returns the number of entries written to the file so far.
+     *
+     * @return count
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Returns the number of entries dropped because the buffer was full, or because the log was closed while they
+     * were recorded.
+     *
+     * @return count
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops logging, writes the entries still buffered and closes the file.
+     *
+     * @throws IOException if unable to write the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        logger.debug("Closed query log '{}': {} entries written, {} dropped", file, written, dropped.sum());
+    }
+
+    /**
+     * Reads a log file, handing out the entries in the order they were recorded.
+     *
+     * @param file log file
+     * @param sink receives each entry
+     * @return the number of entries read
+     * @throws IOException if unable to read the file, or if it is not a valid log
+     */
+    public static long read(Path file, Consumer<Entry> sink) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Invalid query log file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported query log version " + version + ": " + file);
+            }
+            long start = in.readLong();
+            byte[] name = new byte[MAX_NAME];
+            long time = 0;
+            long count = 0;
+            int first;
+            while ((first = in.read()) >= 0) {
+                time += readVarLong(in, first);
+                boolean answered = (in.readByte() & INTERNAL) != 0;
+                int question = in.readInt();
+                int length = 0;
+                int label;
+                while ((label = in.readUnsignedByte()) != 0) {
+                    if (length + label + 2 > name.length) {
+                        throw new IOException("Invalid name in query log file: " + file);
+                    }
+                    name[length++] = (byte) label;
+                    in.readFully(name, length, label);
+                    length += label;
+                }
+                name[length++] = 0;
+                DNSInput input = new DNSInput(name);
+                input.setActive(length);
+                sink.accept(new Entry(start, time, new Name(input), question >>> 16, question & 0xFFFF, answered));
+                count++;
+            }
+            return count;
+        } catch (EOFException e) {
+            throw new IOException("Truncated query log file: " + file, e);
+        }
+    }
+
+    private static long readVarLong(DataInputStream in, int first) throws IOException {
+        long v = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryLog [file=" + file + ", written=" + written + ", dropped=" + dropped.sum() + "]";
+    }
+
+    /**
+     * A question read from a log.
+     */
+    public static final class Entry {
+        private final long startMillis;
+        private final long offsetNanos;
+        private final Name name;
+        private final int type;
+        private final int dclass;
+        private final boolean internal;
+
+        Entry(long startMillis, long offsetNanos, Name name, int type, int dclass, boolean internal) {
+            this.startMillis = startMillis;
+            this.offsetNanos = offsetNanos;
+            this.name = name;
+            this.type = type;
+            this.dclass = dclass;
+            this.internal = internal;
+        }
+
+        /**
+         * Returns the time the question arrived, since the log was opened.
+         *
+         * @return nanoseconds
+         */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        /**
+         * Returns the wall-clock time the question arrived.
+         *
+         * @return the time
+         */
+        public Instant getTimestamp() {
+            return Instant.ofEpochMilli(startMillis).plusNanos(offsetNanos);
+        }
+
+        /**
+         * Returns the name queried.
+         *
+         * @return the name
+         */
+        public Name getName() {
+            return name;
+        }
+
+        /**
+         * Returns the type queried.
+         *
+         * @return the type
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Returns the class queried.
+         *
+         * @return the class
+         */
+        public int getDClass() {
+            return dclass;
+        }
+
+        /**
+         * Tests if the question was answered internally.
+         *
+         * @return true if answered internally, false if sent to the external resolver
+         */
+        public boolean isInternal() {
+            return internal;
+        }
+
+        /**
+         * Builds a new query with this question.
+         *
+         * @return the query
+         */
+        public Message toQuery() {
+            return Message.newQuery(Record.newRecord(name, type, dclass));
+        }
+
+        @Override
+        public String toString() {
+            return getTimestamp() + " " + name + " " + Type.string(type) + " " + DClass.string(dclass)
+                    + (internal ? " internal" : " external");
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link QueryLog} through a resolver, to reproduce recorded query patterns as load, and reports the
+ * throughput and the latencies.
+ * <p>
+ * The entries are spread over the threads in turn and each thread sends its queries at the time they were recorded,
+ * scaled by the speed, or as fast as possible. When paced, latencies are measured from the time a query was due, so
+ * a resolver falling behind shows up in the percentiles instead of slowing down the replay. Asynchronous replays keep
+ * at most 1024 queries in flight.
+ * <p>
+ * The log is read while the queries are sent, it does not need to fit in memory.
+ */
+public final class QueryReplay {
+    private static final int QUEUE_SIZE = 1024;
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final QueryLog.Entry END = new QueryLog.Entry(0, 0, Name.root, Type.A, DClass.IN, false);
+
+    private final Resolver resolver;
+    private final int threads;
+    private final double speed;
+    private final boolean async;
+
+    private QueryReplay(Resolver resolver, int threads, double speed, boolean async) {
+        this.resolver = resolver;
+        this.threads = threads;
+        this.speed = speed;
+        this.async = async;
+    }
+
+    /**
+     * Creates a replay sending the queries with {@link Resolver#send}, from one thread, at the recorded rate.
+     *
+     * @param resolver resolver receiving the queries, e.g. a {@link FakeResolver}
+     * @return the replay
+     */
+    public static QueryReplay to(Resolver resolver) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("Invalid resolver");
+        }
+        return new QueryReplay(resolver, 1, 1, false);
+    }
+
+    /**
+     * Returns a copy of this replay sending the queries from a number of threads.
+     *
+     * @param threads number of threads
+     * @return the new replay
+     */
+    public QueryReplay withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads");
+        }
+        return new QueryReplay(resolver, threads, speed, async);
+    }
+
+    /**
+     * Returns a copy of this replay sending the queries faster or slower than recorded.
+     *
+     * @param speed rate relative to the recorded one, e.g. 2 to send twice as fast
+     * @return the new replay
+     */
+    public QueryReplay withSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Invalid speed");
+        }
+        return new QueryReplay(resolver, threads, speed, async);
+    }
+
+    /**
+     * Returns a copy of this replay sending the queries as fast as possible.
+     *
+     * @return the new replay
+     */
+    public QueryReplay withMaxRate() {
+        return new QueryReplay(resolver, threads, Double.POSITIVE_INFINITY, async);
+    }
+
+    /**
+     * Returns a copy of this replay sending the queries with {@link Resolver#sendAsync}, without waiting for each
+     * response before the next query.
+     *
+     * @param async true to send asynchronously
+     * @return the new replay
+     */
+    public QueryReplay withAsync(boolean async) {
+        return new QueryReplay(resolver, threads, speed, async);
+    }
+
+    /**
+     * Replays a log, returning when every query has been answered or has failed.
+     *
+     * @param log query log file
+     * @return the throughput and latencies
+     * @throws IOException if unable to read the log
+     */
+    public Report run(Path log) throws IOException {
+        Run run = new Run();
+        List<Thread> workers = new ArrayList<>(threads);
+        List<BlockingQueue<QueryLog.Entry>> queues = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<QueryLog.Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            queues.add(queue);
+            Thread t = new Thread(() -> run.work(queue), "fakeresolver-replay-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        long[] next = new long[1];
+        try {
+            QueryLog.read(log, entry -> {
+                if (next[0] == 0) {
+                    run.start(entry.getOffsetNanos());
+                    workers.forEach(Thread::start);
+                }
+                put(queues.get((int) (next[0]++ % threads)), entry);
+            });
+        } finally {
+            if (next[0] > 0) {
+                queues.forEach(q -> put(q, END));
+            }
+        }
+        if (next[0] == 0) {
+            return new Report(0, 0, 0, new LatencyHistogram());
+        }
+        try {
+            for (Thread t : workers) {
+                t.join();
+            }
+            run.pending.arriveAndAwaitAdvance();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        return new Report(next[0], run.errors.sum(), System.nanoTime() - run.startNanos, run.latencies);
+    }
+
+    private static void put(BlockingQueue<QueryLog.Entry> queue, QueryLog.Entry entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying", e);
+        }
+    }
+
+    /**
+     * State shared by the threads of one replay.
+     */
+    private final class Run {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Phaser pending = new Phaser(1);
+        private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        private volatile long startNanos;
+        private volatile long baseOffset;
+
+        private void start(long offset) {
+            baseOffset = offset;
+            startNanos = System.nanoTime();
+        }
+
+        private void work(BlockingQueue<QueryLog.Entry> queue) {
+            boolean paced = speed != Double.POSITIVE_INFINITY;
+            try {
+                while (true) {
+                    QueryLog.Entry entry = queue.take();
+                    if (entry == END) {
+                        return;
+                    }
+                    long begin;
+                    if (paced) {
+                        begin = startNanos + (long) ((entry.getOffsetNanos() - baseOffset) / speed);
+                        long wait;
+                        while ((wait = begin - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        begin = System.nanoTime();
+                    }
+                    if (async) {
+                        inFlight.acquire();
+                        pending.register();
+                        CompletionStage<Message> response;
+                        try {
+                            response = resolver.sendAsync(entry.toQuery());
+                        } catch (RuntimeException e) {
+                            // failed before returning a future, nothing will complete it
+                            done(begin, true);
+                            inFlight.release();
+                            pending.arriveAndDeregister();
+                            continue;
+                        }
+                        response.whenComplete((r, e) -> {
+                            done(begin, e != null);
+                            inFlight.release();
+                            pending.arriveAndDeregister();
+                        });
+                    } else {
+                        boolean failed = false;
+                        try {
+                            resolver.send(entry.toQuery());
+                        } catch (IOException | RuntimeException e) {
+                            failed = true;
+                        }
+                        done(begin, failed);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void done(long begin, boolean failed) {
+            if (failed) {
+                errors.increment();
+            } else {
+                latencies.record(System.nanoTime() - begin);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryReplay [resolver=" + resolver + ", threads=" + threads + ", speed=" + speed + ", async=" + async
+                + "]";
+    }
+
+    /**
+     * Results of a replay.
+     */
+    public static final class Report {
+        private final long queries;
+        private final long errors;
+        private final long elapsedNanos;
+        private final LatencyHistogram latencies;
+
+        private Report(long queries, long errors, long elapsedNanos, LatencyHistogram latencies) {
+            this.queries = queries;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the number of queries sent.
+         *
+         * @return count
+         */
+        public long getQueries() {
+            return queries;
+        }
+
+        /**
+         * Returns the number of queries that failed.
+         *
+         * @return count
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the time from the first query to the last response.
+         *
+         * @return the duration
+         */
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        /**
+         * Returns the number of queries per second.
+         *
+         * @return throughput
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : queries * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the latencies of the queries answered.
+         *
+         * @return histogram
+         */
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Report [queries=%d, errors=%d, elapsed=%s, throughput=%.1f/s, p50=%dus, p99=%dus, "
+                            + "p999=%dus, max=%dus]", queries, errors, getElapsed(), getThroughput(),
+                    latencies.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+                    latencies.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+                    latencies.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS),
+                    latencies.getMax(TimeUnit.MICROSECONDS));
+        }
+    }
+}
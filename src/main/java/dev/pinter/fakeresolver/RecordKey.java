@@ -0,0 +1,86 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * Index key made of an owner name, a type and a class.
+ * <p>
+ * {@link Name#equals(Object)} and {@link Name#hashCode()} are case-insensitive, so two keys built from names that
+ * only differ in case are equal.
+ */
+final class RecordKey {
+    private final Name name;
+    private final int type;
+    private final int dclass;
+    private final int hash;
+
+    RecordKey(Name name, int type, int dclass) {
+        this.name = name;
+        this.type = type;
+        this.dclass = dclass;
+        this.hash = 31 * (31 * name.hashCode() + type) + dclass;
+    }
+
+    /**
+     * Creates the key of a record.
+     *
+     * @param r record
+     * @return the key
+     */
+    static RecordKey of(Record r) {
+        return new RecordKey(r.getName(), r.getType(), r.getDClass());
+    }
+
+    Name getName() {
+        return name;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    int getDClass() {
+        return dclass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecordKey)) {
+            return false;
+        }
+        RecordKey other = (RecordKey) o;
+        return hash == other.hash && type == other.type && dclass == other.dclass && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name + "/" + Type.string(type) + "/" + DClass.string(dclass);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a record set.
+ * <p>
+ * Records are packed in chunks, each chunk being the answer section of a DNS message in wire format, so owner names
+ * are compressed and a chunk is parsed straight from the memory-mapped file. The header holds a checksum of the
+ * source the records came from, used to detect stale snapshots.
+ */
+final class RecordSnapshot {
+    private static final int MAGIC = 0x46525353; // FRSS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int CHUNK_SIZE = 256;
+
+    private RecordSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot. The file is replaced atomically, readers never see a partial snapshot.
+     *
+     * @param file     snapshot file
+     * @param records  records to save
+     * @param checksum checksum of the source of the records
+     * @throws IOException if unable to write the file
+     */
+    static void write(Path file, Collection<Record> records, long checksum) throws IOException {
+        try (Writer writer = new Writer(file, checksum)) {
+            writer.addAll(records);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Streaming snapshot writer, for records that are not held in memory at once. The records go to a temporary file
+     * that replaces the snapshot atomically on {@link #commit()}, closing without committing discards them.
+     */
+    static final class Writer implements Closeable {
+        private final Path file;
+        private final Path tmp;
+        private final DataOutputStream out;
+        private Message chunk = new Message(0);
+        private long count;
+        private boolean committed;
+
+        Writer(Path file, long checksum) throws IOException {
+            this.file = file;
+            Path parent = file.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+            out.writeLong(0);
+        }
+
+        void addAll(Collection<Record> records) throws IOException {
+            for (Record r : records) {
+                chunk.addRecord(r, Section.ANSWER);
+                if (chunk.getHeader().getCount(Section.ANSWER) == CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            byte[] wire = chunk.toWire();
+            out.writeInt(wire.length);
+            out.write(wire);
+            count += chunk.getHeader().getCount(Section.ANSWER);
+            chunk = new Message(0);
+        }
+
+        /**
+         * Writes the pending records and the record count, then replaces the snapshot.
+         *
+         * @return the number of records written
+         * @throws IOException if unable to write the file
+         */
+        long commit() throws IOException {
+            if (chunk.getHeader().getCount(Section.ANSWER) > 0) {
+                writeChunk();
+            }
+            out.close();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(0, count);
+                while (header.hasRemaining()) {
+                    channel.write(header, HEADER_SIZE - Long.BYTES + header.position());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Tests if the file is a snapshot of this version, made from the source with the checksum.
+     *
+     * @param file     snapshot file
+     * @param checksum checksum of the source
+     * @return false if the file is missing, invalid or stale
+     */
+    static boolean isCurrent(Path file, long checksum) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            return header.remaining() == HEADER_SIZE && header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getLong() == checksum;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a snapshot, handing out the records chunk by chunk.
+     *
+     * @param file snapshot file
+     * @param sink receives each chunk, the list must not be kept
+     * @return the number of records read
+     * @throws IOException if unable to read the file, or if it is not a valid snapshot
+     */
+    static long read(Path file, Consumer<List<Record>> sink) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid snapshot file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+        buffer.getLong();
+        long expected = buffer.getLong();
+        long count = 0;
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            ByteBuffer slice = buffer.slice();
+            slice.limit(length);
+            buffer.position(buffer.position() + length);
+            List<Record> chunk = new Message(slice).getSection(Section.ANSWER);
+            sink.accept(chunk);
+            count += chunk.size();
+        }
+        if (count != expected) {
+            throw new IOException("Truncated snapshot file: " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Computes the checksum of a zone file, used to invalidate the snapshots made from previous contents.
+     *
+     * @param origin   zone origin
+     * @param zoneFile zonefile path
+     * @return the checksum
+     * @throws IOException if unable to read the file
+     */
+    static long zoneChecksum(Name origin, Path zoneFile) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(origin.toWireCanonical());
+        byte[] buf = new byte[8192];
+        try (InputStream in = Files.newInputStream(zoneFile)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the checksum of the contents of a zone file already read, the same as
+     * {@link #zoneChecksum(Name, Path)} gives for the file.
+     *
+     * @param origin zone origin
+     * @param zone   contents of the zonefile
+     * @return the checksum
+     */
+    static long zoneChecksum(Name origin, byte[] zone) {
+        CRC32 crc = new CRC32();
+        crc.update(origin.toWireCanonical());
+        crc.update(zone);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of records that answers are built from: the shared {@link RecordStore}, or the
+ * {@link CompactRecordStore} of a large zone.
+ */
+interface RecordSource {
+    /**
+     * Finds the records matching the name, type and class.
+     *
+     * @param name   owner name
+     * @param type   record type
+     * @param dclass record class
+     * @return the records found, or an empty list. The list must not be modified.
+     */
+    List<Record> lookup(Name name, int type, int dclass);
+
+    /**
+     * Increments the rotation counter of an RRset.
+     *
+     * @param name   owner name
+     * @param type   record type
+     * @param dclass record class
+     * @return the previous value of the counter, or 0 if there is no such RRset
+     */
+    int nextRotation(Name name, int type, int dclass);
+
+    /**
+     * Tests if the snapshot holds records of a type.
+     *
+     * @param type record type
+     * @return result
+     */
+    boolean hasType(int type);
+
+    /**
+     * Tests if a name is served by this snapshot, either because it owns records or because it is below an owner
+     * name.
+     *
+     * @param name name to test
+     * @return result
+     */
+    boolean isInternal(Name name);
+
+    /**
+     * Tests if a name exists, either because it owns records or because it is an ancestor of an owner name.
+     *
+     * @param name name to test
+     * @return result
+     */
+    boolean nameExists(Name name);
+
+    /**
+     * Finds the wildcard owner name that covers a name that does not exist.
+     *
+     * @param name a name that does not exist
+     * @return the wildcard name, or null if no wildcard covers the name
+     */
+    Name findWildcard(Name name);
+
+    /**
+     * Returns the answer prebuilt for a question.
+     *
+     * @param key question name, type and class
+     * @return the template, or null if not built yet. The template must not be modified.
+     */
+    Message getAnswerTemplate(RecordKey key);
+
+    /**
+     * Saves the answer prebuilt for a question.
+     *
+     * @param key      question name, type and class
+     * @param template the answer, must not be modified afterward
+     */
+    void putAnswerTemplate(RecordKey key, Message template);
+
+    /**
+     * Returns all records in insertion order.
+     *
+     * @return read-only list
+     */
+    List<Record> getRecords();
+
+    /**
+     * Returns the number of records.
+     *
+     * @return count
+     */
+    int size();
+}
@@ -0,0 +1,514 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Immutable record store indexed by owner name, type and class.
+ * <p>
+ * A hash index groups the records by owner name so a lookup does not depend on the number of records stored. The
+ * index is keyed by the {@link Name} itself, whose case-insensitive hash is computed once per instance and whose
+ * comparison works on the wire form, so a lookup of an existing name allocates nothing: the owner is found with
+ * the name of the question, and its few RRsets are scanned by type and class. A name that does not exist is looked
+ * up again by its ancestors in the {@link NameTree}, which builds a {@link Name} per label.
+ * <p>
+ * A store is never modified after it is built, so it can be read by any number of threads without locking; changes
+ * are made by building a new store with {@link #toBuilder()}. The index is a {@link HashTrie}, so the new store
+ * shares everything but the changed owner names with the old one, and a write costs the same in a store of ten
+ * records or of a million. Each record is numbered when added, and the list in insertion order is only put together
+ * when asked for.
+ */
+final class RecordStore implements RecordSource {
+    static final RecordStore EMPTY = new RecordStore(HashTrie.empty(), NameTree.EMPTY, new HashSet<>(), 0, 0);
+
+    private final HashTrie<Name, RRsets> index;
+    private final NameTree names;
+    private final Set<Integer> types;
+    private final int size;
+    private final long nextSeq;
+    private final Map<RecordKey, Message> answerTemplates = new ConcurrentHashMap<>();
+    private volatile List<Record> records;
+
+    private RecordStore(HashTrie<Name, RRsets> index, NameTree names, Set<Integer> types, int size,
+                        long nextSeq) {
+        this.index = index;
+        this.names = names;
+        this.types = types;
+        this.size = size;
+        this.nextSeq = nextSeq;
+    }
+
+    /**
+     * Creates a store with the records.
+     *
+     * @param rs records
+     * @return the store
+     */
+    static RecordStore of(Collection<? extends Record> rs) {
+        return EMPTY.toBuilder().addAll(rs).build();
+    }
+
+    /**
+     * Finds the records matching the name, type and class.
+     *
+     * @param name   owner name
+     * @param type   record type
+     * @param dclass record class
+     * @return the records found, or an empty list. The list must not be modified.
+     */
+    @Override
+    public List<Record> lookup(Name name, int type, int dclass) {
+        RRsets rrsets = index.get(name);
+        return rrsets == null ? Collections.emptyList() : rrsets.get(type, dclass);
+    }
+
+    /**
+     * Increments the rotation counter of an RRset. Counters belong to this snapshot and are updated atomically
+     * without locking.
+     *
+     * @param name   owner name
+     * @param type   record type
+     * @param dclass record class
+     * @return the previous value of the counter, or 0 if there is no such RRset
+     */
+    @Override
+    public int nextRotation(Name name, int type, int dclass) {
+        RRsets rrsets = index.get(name);
+        return rrsets == null ? 0 : rrsets.nextRotation(type, dclass);
+    }
+
+    /**
+     * Tests if the store holds records of a type, e.g. to skip searching for DNAME records when there is none.
+     *
+     * @param type record type
+     * @return result
+     */
+    @Override
+    public boolean hasType(int type) {
+        return types.contains(type);
+    }
+
+    /**
+     * Tests if a name is served by this store, either because it owns records or because it is below an owner name.
+     *
+     * @param name name to test
+     * @return result
+     */
+    @Override
+    public boolean isInternal(Name name) {
+        return names.isAtOrBelowOwner(name);
+    }
+
+    /**
+     * Tests if a name exists, either because it owns records or because it is an ancestor of an owner name.
+     *
+     * @param name name to test
+     * @return result
+     */
+    @Override
+    public boolean nameExists(Name name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Finds the wildcard owner name that covers a name that does not exist, the one directly below its closest
+     * encloser.
+     *
+     * @param name a name that does not exist
+     * @return the wildcard name, or null if no wildcard covers the name
+     */
+    @Override
+    public Name findWildcard(Name name) {
+        Name encloser = names.closestEncloser(name);
+        return encloser == null ? null : names.getWildcard(encloser);
+    }
+
+    /**
+     * Returns the answer prebuilt for a question. Templates belong to this snapshot, so they never outlive the
+     * records they were built from.
+     *
+     * @param key question name, type and class
+     * @return the template, or null if not built yet. The template must not be modified.
+     */
+    @Override
+    public Message getAnswerTemplate(RecordKey key) {
+        return answerTemplates.get(key);
+    }
+
+    /**
+     * Saves the answer prebuilt for a question.
+     *
+     * @param key      question name, type and class
+     * @param template the answer, must not be modified afterward
+     */
+    @Override
+    public void putAnswerTemplate(RecordKey key, Message template) {
+        answerTemplates.putIfAbsent(key, template);
+    }
+
+    /**
+     * Returns all records in insertion order.
+     *
+     * @return read-only list
+     */
+    @Override
+    public List<Record> getRecords() {
+        List<Record> rs = records;
+        if (rs == null) {
+            rs = ordered();
+            records = rs;
+        }
+        return rs;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Collects the records of the index and puts them back in the order they were added.
+     */
+    private List<Record> ordered() {
+        long[] seqs = new long[size];
+        Record[] unordered = new Record[size];
+        int[] count = new int[1];
+        index.forEach((name, rrsets) -> count[0] = rrsets.collect(seqs, unordered, count[0]));
+        long[] sorted = seqs.clone();
+        Arrays.sort(sorted);
+        Record[] rs = new Record[size];
+        for (int i = 0; i < size; i++) {
+            rs[Arrays.binarySearch(sorted, seqs[i])] = unordered[i];
+        }
+        return Collections.unmodifiableList(Arrays.asList(rs));
+    }
+
+    /**
+     * Creates a builder initialized with the contents of this store. The store itself is not modified, the RRsets
+     * and index nodes shared with it are copied before the first change.
+     *
+     * @return the builder
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    static final class Builder {
+        private final HashTrie.Builder<Name, RRsets> index;
+        private final Set<Name> copied = new HashSet<>();
+        private final NameTree.Builder names;
+        private final Set<Integer> types;
+        private int size;
+        private long nextSeq;
+        private Consumer<Record> onAdd;
+        private Consumer<Record> onRemoveRRset;
+        private final List<Record> emptied = new ArrayList<>();
+
+        private Builder(RecordStore store) {
+            this.index = store.index.toBuilder();
+            this.names = store.names.toBuilder();
+            this.types = new HashSet<>(store.types);
+            this.size = store.size;
+            this.nextSeq = store.nextSeq;
+        }
+
+        /**
+         * Sets a listener told of every record added.
+         *
+         * @param onAdd the listener
+         * @return this builder
+         */
+        Builder onAdd(Consumer<Record> onAdd) {
+            this.onAdd = onAdd;
+            return this;
+        }
+
+        /**
+         * Sets a listener told of the RRsets removed by the change, with the last record removed from each, when the
+         * store is built. An RRset emptied and added back by the same change is not reported.
+         *
+         * @param onRemoveRRset the listener
+         * @return this builder
+         */
+        Builder onRemoveRRset(Consumer<Record> onRemoveRRset) {
+            this.onRemoveRRset = onRemoveRRset;
+            return this;
+        }
+
+        /**
+         * Adds a record to the store and to the index.
+         *
+         * @param r record
+         * @return this builder
+         */
+        Builder add(Record r) {
+            Name name = r.getName();
+            RRsets rrsets = index.get(name);
+            if (rrsets == null) {
+                rrsets = new RRsets();
+                index.put(name, rrsets);
+                copied.add(name);
+            } else if (copied.add(name)) {
+                rrsets = rrsets.copy();
+                index.put(name, rrsets);
+            }
+            rrsets.add(r, nextSeq++);
+            size++;
+            names.add(r.getName());
+            types.add(r.getType());
+            if (onAdd != null) {
+                onAdd.accept(r);
+            }
+            return this;
+        }
+
+        /**
+         * Adds records to the store and to the index.
+         *
+         * @param rs records
+         * @return this builder
+         */
+        Builder addAll(Collection<? extends Record> rs) {
+            for (Record r : rs) {
+                add(r);
+            }
+            return this;
+        }
+
+        /**
+         * Removes one occurrence of a record from the store and from the index. The types of the store are kept, so
+         * {@link RecordStore#hasType(int)} may still report a type that is no longer stored.
+         *
+         * @param r record
+         * @return false if the record is not in the store
+         */
+        boolean remove(Record r) {
+            Name name = r.getName();
+            RRsets rrsets = index.get(name);
+            if (rrsets == null || !rrsets.get(r.getType(), r.getDClass()).contains(r)) {
+                return false;
+            }
+            if (copied.add(name)) {
+                rrsets = rrsets.copy();
+                index.put(name, rrsets);
+            }
+            rrsets.remove(r);
+            boolean last = rrsets.get(r.getType(), r.getDClass()).isEmpty();
+            if (rrsets.isEmpty()) {
+                index.remove(name);
+                copied.remove(name);
+            }
+            size--;
+            names.remove(r.getName());
+            if (last && onRemoveRRset != null) {
+                emptied.add(r);
+            }
+            return true;
+        }
+
+        /**
+         * Removes records from the store and from the index.
+         *
+         * @param rs records
+         * @return this builder
+         */
+        Builder removeAll(Collection<? extends Record> rs) {
+            for (Record r : rs) {
+                remove(r);
+            }
+            return this;
+        }
+
+        RecordStore build() {
+            for (Record r : emptied) {
+                RRsets rrsets = index.get(r.getName());
+                if (rrsets == null || rrsets.get(r.getType(), r.getDClass()).isEmpty()) {
+                    onRemoveRRset.accept(r);
+                }
+            }
+            emptied.clear();
+            // the RRsets copied so far now belong to the store built, later changes copy them again
+            copied.clear();
+            return new RecordStore(index.build(), names.build(), new HashSet<>(types), size, nextSeq);
+        }
+    }
+
+    /**
+     * The RRsets of an owner name, scanned linearly by type and class since a name rarely owns more than a few.
+     * Modified only by the builder that created or copied it.
+     */
+    private static final class RRsets {
+        private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(int[].class);
+
+        private int[] keys;
+        private RRset[] sets;
+        private int[] counters;
+        private int size;
+
+        private RRsets() {
+            this.keys = new int[1];
+            this.sets = new RRset[1];
+            this.counters = new int[1];
+        }
+
+        private RRsets(RRsets other) {
+            this.keys = other.keys.clone();
+            this.sets = other.sets.clone();
+            this.counters = other.counters.clone();
+            this.size = other.size;
+            for (int i = 0; i < size; i++) {
+                sets[i] = sets[i].copy();
+            }
+        }
+
+        private static int key(int type, int dclass) {
+            return type << 16 | dclass & 0xFFFF;
+        }
+
+        List<Record> get(int type, int dclass) {
+            int key = key(type, dclass);
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return sets[i].records;
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        int nextRotation(int type, int dclass) {
+            int key = key(type, dclass);
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return (int) COUNTERS.getAndAdd(counters, i, 1);
+                }
+            }
+            return 0;
+        }
+
+        RRsets copy() {
+            return new RRsets(this);
+        }
+
+        void add(Record r, long seq) {
+            int key = key(r.getType(), r.getDClass());
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    sets[i].add(r, seq);
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                sets = Arrays.copyOf(sets, size * 2);
+                counters = Arrays.copyOf(counters, size * 2);
+            }
+            RRset set = new RRset(new ArrayList<>(1), new long[1]);
+            set.add(r, seq);
+            keys[size] = key;
+            sets[size++] = set;
+        }
+
+        void remove(Record r) {
+            int key = key(r.getType(), r.getDClass());
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    sets[i].remove(r);
+                    if (sets[i].records.isEmpty()) {
+                        size--;
+                        keys[i] = keys[size];
+                        sets[i] = sets[size];
+                        counters[i] = counters[size];
+                        counters[size] = 0;
+                        sets[size] = null;
+                    }
+                    return;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Copies the records and their numbers to the arrays, from an offset.
+         *
+         * @return the offset after the last record copied
+         */
+        int collect(long[] seqs, Record[] out, int offset) {
+            for (int i = 0; i < size; i++) {
+                List<Record> records = sets[i].records;
+                System.arraycopy(sets[i].seqs, 0, seqs, offset, records.size());
+                for (Record r : records) {
+                    out[offset++] = r;
+                }
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * The records of one type and class, held in a typed wrapper so the RRsets of a name can be kept in an array,
+     * with the number each record got when added to the store.
+     */
+    private static final class RRset {
+        private final List<Record> records;
+        private long[] seqs;
+
+        private RRset(List<Record> records, long[] seqs) {
+            this.records = records;
+            this.seqs = seqs;
+        }
+
+        RRset copy() {
+            return new RRset(new ArrayList<>(records), seqs.clone());
+        }
+
+        void add(Record r, long seq) {
+            int n = records.size();
+            if (n == seqs.length) {
+                seqs = Arrays.copyOf(seqs, n * 2);
+            }
+            seqs[n] = seq;
+            records.add(r);
+        }
+
+        void remove(Record r) {
+            int i = records.indexOf(r);
+            if (i >= 0) {
+                records.remove(i);
+                System.arraycopy(seqs, i + 1, seqs, i, records.size() - i);
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TSIG;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * A resolver spreading the queries over several upstream resolvers, used as the external resolver of a
+ * {@link FakeResolver} so that a slow or failing upstream does not stall the external names.
+ * <p>
+ * Each query goes to one upstream chosen by the {@link Policy}, and fails over to the next upstreams when it fails.
+ * With {@link Policy#HEDGED} a second upstream is also queried when the first is slower than a percentile of the
+ * latencies seen so far, and the first response wins. An upstream failing several queries in a row is ejected by a
+ * circuit breaker for some time, then gets a single probe query, and is back if the probe succeeds.
+ * <p>
+ * Failures are the exceptions of the upstreams, like timeouts. Responses are successes whatever their rcode.
+ */
+public class ResolverPool implements Resolver, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ResolverPool.class);
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_EJECTION_TIME = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_HEDGE_DELAY = Duration.ofMillis(50);
+    private static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int HEDGE_SAMPLES = 32;
+    // tickets of the queries that are not sent in an epoch of the breaker, see Upstream
+    private static final int NOT_ACQUIRED = -1;
+    private static final int PROBE = -2;
+    private static final int UNTRACKED = -3;
+
+    /**
+     * How the upstream of a query is chosen.
+     */
+    public enum Policy {
+        /**
+         * Every upstream in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * The upstream with the lowest moving average of latency. Upstreams not measured yet are tried first.
+         */
+        LOWEST_LATENCY,
+        /**
+         * The upstream with the lowest latency, racing the next one when no response arrives within the hedge
+         * percentile of the latencies. See {@link #setHedgePercentile(double)}.
+         */
+        HEDGED
+    }
+
+    private final Upstream[] upstreams;
+    private final Policy policy;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile Duration ejectionTime = DEFAULT_EJECTION_TIME;
+    private volatile Duration hedgeDelay = DEFAULT_HEDGE_DELAY;
+    private volatile double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private volatile long hedgeNanos = -1;
+
+    /**
+     * Creates a pool with its own scheduler thread, used to start the hedged queries.
+     *
+     * @param policy    how the upstream of a query is chosen
+     * @param upstreams the upstream resolvers
+     */
+    public ResolverPool(Policy policy, List<? extends Resolver> upstreams) {
+        this(policy, upstreams, newScheduler(), true);
+    }
+
+    /**
+     * Creates a pool with its own scheduler thread, used to start the hedged queries.
+     *
+     * @param policy    how the upstream of a query is chosen
+     * @param upstreams the upstream resolvers
+     */
+    public ResolverPool(Policy policy, Resolver... upstreams) {
+        this(policy, Arrays.asList(upstreams));
+    }
+
+    /**
+     * Creates a pool using a scheduler. The scheduler is not shut down when the pool is closed.
+     *
+     * @param policy    how the upstream of a query is chosen
+     * @param upstreams the upstream resolvers
+     * @param scheduler executor used to start the hedged queries
+     */
+    public ResolverPool(Policy policy, List<? extends Resolver> upstreams, ScheduledExecutorService scheduler) {
+        this(policy, upstreams, scheduler, false);
+    }
+
+    private ResolverPool(Policy policy, List<? extends Resolver> upstreams, ScheduledExecutorService scheduler,
+                         boolean ownScheduler) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Invalid policy");
+        }
+        if (upstreams == null || upstreams.isEmpty() || upstreams.contains(null)) {
+            throw new IllegalArgumentException("Invalid upstream resolvers");
+        }
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler");
+        }
+        this.policy = policy;
+        this.upstreams = upstreams.stream().map(Upstream::new).toArray(Upstream[]::new);
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "fakeresolver-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Sets the number of failures in a row after which an upstream is ejected.
+     *
+     * @param failureThreshold number of failures, the default is 5
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Invalid failure threshold");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Sets the time an ejected upstream is left out before it is probed.
+     *
+     * @param ejectionTime the time, the default is 30 seconds
+     */
+    public void setEjectionTime(Duration ejectionTime) {
+        if (ejectionTime == null || ejectionTime.isNegative()) {
+            throw new IllegalArgumentException("Invalid ejection time");
+        }
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Sets the percentile of the latencies after which a hedged query is sent to a second upstream.
+     *
+     * @param hedgePercentile percentile, between 0 and 100, the default is 95
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        if (!(hedgePercentile >= 0 && hedgePercentile <= 100)) {
+            throw new IllegalArgumentException("Invalid percentile");
+        }
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeNanos = -1;
+    }
+
+    /**
+     * Sets the delay after which a hedged query is sent to a second upstream, until enough latencies are measured to
+     * use the hedge percentile.
+     *
+     * @param hedgeDelay the delay, the default is 50 milliseconds
+     */
+    public void setHedgeDelay(Duration hedgeDelay) {
+        if (hedgeDelay == null || hedgeDelay.isNegative()) {
+            throw new IllegalArgumentException("Invalid hedge delay");
+        }
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * Returns the upstream resolvers.
+     *
+     * @return the resolvers, in the order given
+     */
+    public List<Resolver> getUpstreams() {
+        List<Resolver> list = new ArrayList<>(upstreams.length);
+        for (Upstream u : upstreams) {
+            list.add(u.resolver);
+        }
+        return list;
+    }
+
+    /**
+     * Tests if an upstream receives queries, that is if it is not ejected by the circuit breaker.
+     *
+     * @param upstream one of the upstream resolvers
+     * @return false while ejected
+     */
+    public boolean isAvailable(Resolver upstream) {
+        for (Upstream u : upstreams) {
+            if (u.resolver == upstream) {
+                return u.ejectedUntil == 0;
+            }
+        }
+        throw new IllegalArgumentException("Unknown upstream resolver");
+    }
+
+    /**
+     * Returns a copy of the histogram of the latencies of the successful upstream queries.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies.copy();
+    }
+
+    @Override
+    public Message send(Message query) throws IOException {
+        try {
+            return sendAsync(query).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query) {
+        return new Attempt(query, order(), Resolver::sendAsync).start();
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+        return new Attempt(query, order(), (r, q) -> r.sendAsync(q, executor)).start();
+    }
+
+    /**
+     * Returns the upstreams in the order they are tried for a query.
+     */
+    private Upstream[] order() {
+        Upstream[] order = upstreams.clone();
+        if (policy == Policy.ROUND_ROBIN) {
+            int first = Math.floorMod(next.getAndIncrement(), order.length);
+            for (int i = 0; i < order.length; i++) {
+                order[i] = upstreams[(first + i) % order.length];
+            }
+        } else {
+            // insertion sort on a snapshot of the latencies, which keep changing while sorting
+            double[] latency = new double[order.length];
+            for (int i = 0; i < order.length; i++) {
+                Upstream u = order[i];
+                double l = u.getLatency();
+                int j = i;
+                while (j > 0 && latency[j - 1] > l) {
+                    order[j] = order[j - 1];
+                    latency[j] = latency[j - 1];
+                    j--;
+                }
+                order[j] = u;
+                latency[j] = l;
+            }
+        }
+        return order;
+    }
+
+    private long hedgeDelayNanos() {
+        long count = latencies.getCount();
+        if (count < HEDGE_SAMPLES) {
+            return hedgeDelay.toNanos();
+        }
+        long nanos = hedgeNanos;
+        if (nanos < 0 || count % HEDGE_SAMPLES == 0) {
+            nanos = Math.max(1, latencies.getValueAtPercentile(hedgePercentile, TimeUnit.NANOSECONDS));
+            hedgeNanos = nanos;
+        }
+        return nanos;
+    }
+
+    /**
+     * One query sent to the pool: the upstreams queried so far, and the failures until one of them answers.
+     */
+    private final class Attempt {
+        private final Message query;
+        private final Upstream[] order;
+        private final BiFunction<Resolver, Message, CompletionStage<Message>> sender;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+        private int position;
+        private int inFlight;
+        private boolean started;
+        private Throwable lastError;
+
+        private Attempt(Message query, Upstream[] order,
+                        BiFunction<Resolver, Message, CompletionStage<Message>> sender) {
+            this.query = query;
+            this.order = order;
+            this.sender = sender;
+        }
+
+        private CompletableFuture<Message> start() {
+            launch();
+            if (policy == Policy.HEDGED && order.length > 1 && !result.isDone()) {
+                ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+                    if (!result.isDone()) {
+                        launch();
+                    }
+                }, hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+                result.whenComplete((r, e) -> hedge.cancel(false));
+            }
+            return result;
+        }
+
+        /**
+         * Sends the query to the next available upstream. When every upstream is ejected, the first one is queried
+         * anyway rather than failing without trying.
+         *
+         * @return false if there is no upstream left to query
+         */
+        private boolean launch() {
+            Upstream upstream = null;
+            int ticket = NOT_ACQUIRED;
+            synchronized (this) {
+                long now = System.nanoTime();
+                while (upstream == null && position < order.length) {
+                    Upstream candidate = order[position++];
+                    ticket = candidate.tryAcquire(now);
+                    if (ticket != NOT_ACQUIRED) {
+                        upstream = candidate;
+                    }
+                }
+                if (upstream == null && !started) {
+                    upstream = order[0];
+                    ticket = UNTRACKED;
+                }
+                if (upstream == null) {
+                    return false;
+                }
+                started = true;
+                inFlight++;
+            }
+            Upstream u = upstream;
+            int t = ticket;
+            long start = System.nanoTime();
+            CompletionStage<Message> response;
+            try {
+                response = sender.apply(u.resolver, query);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((r, e) -> complete(u, t, System.nanoTime() - start, r, e));
+            return true;
+        }
+
+        private void complete(Upstream upstream, int ticket, long nanos, Message response, Throwable error) {
+            if (error == null) {
+                upstream.success(ticket, nanos);
+                latencies.record(nanos);
+                result.complete(response);
+                return;
+            }
+            upstream.failure(ticket);
+            boolean failover;
+            synchronized (this) {
+                inFlight--;
+                lastError = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                failover = inFlight == 0 && !result.isDone();
+            }
+            if (failover && !launch()) {
+                result.completeExceptionally(lastError);
+            }
+        }
+    }
+
+    /**
+     * An upstream resolver, its latency and its circuit breaker. The breaker is closed while {@code ejectedUntil} is
+     * zero; once the ejection time is over a single probe query is let through, and only its result closes the
+     * breaker or ejects the upstream again.
+     * <p>
+     * Each ejection starts a new epoch, and a query is given the epoch it was sent in. The results of queries sent in
+     * an earlier epoch, or while the upstream was ejected, do not count, so a late failure of a query sent before the
+     * ejection neither ejects the upstream again nor cancels the probe in flight.
+     */
+    private final class Upstream {
+        private final Resolver resolver;
+        private final AtomicLong latencyBits = new AtomicLong(Double.doubleToLongBits(0));
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private volatile long ejectedUntil;
+        private volatile int epoch;
+
+        private Upstream(Resolver resolver) {
+            this.resolver = resolver;
+        }
+
+        private double getLatency() {
+            return Double.longBitsToDouble(latencyBits.get());
+        }
+
+        /**
+         * Lets a query through the breaker.
+         *
+         * @param now current time, from {@link System#nanoTime()}
+         * @return the epoch the query is sent in, {@link #PROBE}, or {@link #NOT_ACQUIRED} while ejected
+         */
+        private int tryAcquire(long now) {
+            int e = epoch;
+            long until = ejectedUntil;
+            if (until == 0) {
+                return e;
+            }
+            return now - until >= 0 && probing.compareAndSet(false, true) ? PROBE : NOT_ACQUIRED;
+        }
+
+        private void success(int ticket, long nanos) {
+            long bits;
+            double updated;
+            do {
+                bits = latencyBits.get();
+                double current = Double.longBitsToDouble(bits);
+                updated = current == 0 ? nanos : current + EWMA_WEIGHT * (nanos - current);
+            } while (!latencyBits.compareAndSet(bits, Double.doubleToLongBits(updated)));
+            if (ticket == PROBE) {
+                synchronized (this) {
+                    failures.set(0);
+                    ejectedUntil = 0;
+                    probing.set(false);
+                }
+                logger.info("Upstream resolver {} is back", resolver);
+            } else if (ticket == epoch) {
+                failures.set(0);
+            }
+        }
+
+        private void failure(int ticket) {
+            if (ticket == PROBE) {
+                synchronized (this) {
+                    ejectedUntil = eject();
+                    probing.set(false);
+                }
+                return;
+            }
+            if (ticket != epoch) {
+                return;
+            }
+            int count = failures.incrementAndGet();
+            if (count >= failureThreshold) {
+                synchronized (this) {
+                    if (ticket != epoch) {
+                        // already ejected by a concurrent failure
+                        return;
+                    }
+                    epoch = ticket + 1 & Integer.MAX_VALUE;
+                    ejectedUntil = eject();
+                }
+                logger.warn("Ejecting upstream resolver {} after {} failures", resolver, count);
+            }
+        }
+
+        private long eject() {
+            long until = System.nanoTime() + ejectionTime.toNanos();
+            return until == 0 ? 1 : until;
+        }
+    }
+
+    @Override
+    public void setPort(int port) {
+        for (Upstream u : upstreams) {
+            u.resolver.setPort(port);
+        }
+    }
+
+    @Override
+    public void setTCP(boolean flag) {
+        for (Upstream u : upstreams) {
+            u.resolver.setTCP(flag);
+        }
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag) {
+        for (Upstream u : upstreams) {
+            u.resolver.setIgnoreTruncation(flag);
+        }
+    }
+
+    @Override
+    public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+        for (Upstream u : upstreams) {
+            u.resolver.setEDNS(version, payloadSize, flags, options);
+        }
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key) {
+        for (Upstream u : upstreams) {
+            u.resolver.setTSIGKey(key);
+        }
+    }
+
+    @Override
+    public void setTimeout(Duration timeout) {
+        for (Upstream u : upstreams) {
+            u.resolver.setTimeout(timeout);
+        }
+    }
+
+    /**
+     * Shuts down the scheduler created by this pool. The upstream resolvers are not closed.
+     */
+    @Override
+    public void close() {
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResolverPool [policy=" + policy + ", upstreams=" + upstreams.length + "]";
+    }
+}
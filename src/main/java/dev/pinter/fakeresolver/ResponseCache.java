@@ -0,0 +1,290 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the responses received from the external resolver.
+ * <p>
+ * Responses are keyed by question name, type and class. Positive responses expire after the lowest TTL of the answer
+ * section, negative responses (NXDOMAIN or NODATA) after the SOA negative TTL found in the authority section.
+ * Responses without TTL, or with other response codes, are not cached. The least recently used entry is evicted when
+ * the cache is full. A response returned from the cache has its TTLs lowered by the time elapsed since it was stored.
+ * <p>
+ * Identical requests in flight are coalesced, so a burst of the same query triggers only one upstream call.
+ * A cache can be shared by several {@link FakeResolver} instances.
+ */
+public class ResponseCache {
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<RecordKey, CachedResponse> entries;
+    private final Map<RecordKey, CompletableFuture<Message>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Creates a cache using the system clock.
+     *
+     * @param maxEntries maximum number of responses kept
+     */
+    public ResponseCache(int maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries maximum number of responses kept
+     * @param clock      clock used to expire the responses
+     */
+    public ResponseCache(int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of entries");
+        }
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecordKey, CachedResponse> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached response for the query.
+     *
+     * @param query the dns query
+     * @return a copy of the response with the query id and the remaining TTLs, or null if not cached or expired
+     */
+    public Message get(Message query) {
+        RecordKey key = keyOf(query);
+        long now = clock.millis();
+        CachedResponse entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expires <= now) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return decay(withId(entry.response, query), (now - entry.stored) / 1000);
+    }
+
+    /**
+     * Caches the response to the query, if it is cacheable.
+     *
+     * @param query    the dns query
+     * @param response the dns response
+     */
+    public void put(Message query, Message response) {
+        long ttl = ttlOf(response);
+        if (ttl <= 0) {
+            return;
+        }
+        long now = clock.millis();
+        CachedResponse entry = new CachedResponse(response.clone(), now, now + ttl * 1000L);
+        synchronized (entries) {
+            entries.put(keyOf(query), entry);
+        }
+    }
+
+    /**
+     * Returns the cached response, or sends the query upstream. Concurrent calls for the same question while the
+     * upstream call is in flight share its result.
+     *
+     * @param query    the dns query
+     * @param upstream function sending the query upstream
+     * @return the dns response
+     */
+    public CompletionStage<Message> resolve(Message query, Function<Message, CompletionStage<Message>> upstream) {
+        Message cached = get(query);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        RecordKey key = keyOf(query);
+        CompletableFuture<Message> created = new CompletableFuture<>();
+        CompletableFuture<Message> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.thenApply(response -> withId(response, query));
+        }
+        try {
+            upstream.apply(query).whenComplete((response, ex) -> {
+                if (ex == null) {
+                    put(query, response);
+                }
+                inFlight.remove(key, created);
+                if (ex != null) {
+                    created.completeExceptionally(ex);
+                } else {
+                    created.complete(response);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Removes all cached responses. Counters are not reset.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached responses, including the expired ones not yet removed.
+     *
+     * @return size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     *
+     * @return hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of queries not found in the cache.
+     *
+     * @return misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of queries that joined an identical request already in flight.
+     *
+     * @return coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Computes how long a response can be cached.
+     *
+     * @param response the dns response
+     * @return the ttl in seconds, zero if not cacheable
+     */
+    static long ttlOf(Message response) {
+        int rcode = response.getRcode();
+        if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN) {
+            return 0;
+        }
+        if (rcode == Rcode.NOERROR && !response.getSection(Section.ANSWER).isEmpty()) {
+            long ttl = Long.MAX_VALUE;
+            for (Record r : response.getSection(Section.ANSWER)) {
+                ttl = Math.min(ttl, r.getTTL());
+            }
+            return ttl;
+        }
+        for (Record r : response.getSection(Section.AUTHORITY)) {
+            if (r.getType() == Type.SOA) {
+                return Math.min(r.getTTL(), ((SOARecord) r).getMinimum());
+            }
+        }
+        return 0;
+    }
+
+    private static RecordKey keyOf(Message query) {
+        Record question = query.getQuestion();
+        return new RecordKey(question.getName(), question.getType(), question.getDClass());
+    }
+
+    /**
+     * Lowers the TTL of the records of a response. The OPT record is kept, its TTL holds flags.
+     *
+     * @param response the response, changed in place
+     * @param elapsed  seconds elapsed since the response was stored
+     * @return the response
+     */
+    private static Message decay(Message response, long elapsed) {
+        if (elapsed <= 0) {
+            return response;
+        }
+        for (int section : TtlDecay.SECTIONS) {
+            List<Record> records = new ArrayList<>(response.getSection(section));
+            response.removeAllRecords(section);
+            for (Record r : records) {
+                boolean keep = r.getType() == Type.OPT || r.getTTL() == 0;
+                response.addRecord(keep ? r : TtlDecay.withTtl(r, Math.max(0, r.getTTL() - elapsed)), section);
+            }
+        }
+        return response;
+    }
+
+    private static Message withId(Message response, Message query) {
+        Message copy = response.clone();
+        copy.getHeader().setID(query.getHeader().getID());
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache [entries=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    private static final class CachedResponse {
+        private final Message response;
+        private final long stored;
+        private final long expires;
+
+        private CachedResponse(Message response, long stored, long expires) {
+            this.response = response;
+            this.stored = stored;
+            this.expires = expires;
+        }
+    }
+}
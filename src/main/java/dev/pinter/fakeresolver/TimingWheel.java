@@ -0,0 +1,167 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of millisecond deadlines.
+ * <p>
+ * Each level has 64 slots, one per 6-bit digit of the deadline: a timer is kept at the level of the highest digit
+ * where its deadline differs from the current time, so level 0 holds the timers of the next 64 milliseconds, level 1
+ * those of the next 4096, and so on up to 2<sup>60</sup> milliseconds. Advancing jumps straight to the next non-empty
+ * slot, found with one bitmap per level, and moves its timers down a level until they are due. Scheduling and
+ * advancing take constant time per timer, whatever the number of timers and the time elapsed.
+ * <p>
+ * Not thread-safe.
+ *
+ * @param <T> the timer payload
+ */
+final class TimingWheel<T> {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 10;
+
+    private final List<List<Timer<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private final long[] occupied = new long[LEVELS];
+    private final List<Timer<T>> due = new ArrayList<>();
+    private long current;
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param now the current time in milliseconds
+     */
+    TimingWheel(long now) {
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(null);
+        }
+        this.current = now;
+    }
+
+    /**
+     * Adds a timer. Deadlines not after the current time are due at the next {@link #advance(long, Consumer)}.
+     *
+     * @param deadline time in milliseconds
+     * @param payload  value handed out when due
+     */
+    void schedule(long deadline, T payload) {
+        insert(new Timer<>(deadline, payload));
+        size++;
+    }
+
+    private void insert(Timer<T> timer) {
+        if (timer.deadline <= current) {
+            due.add(timer);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(timer.deadline ^ current)) / BITS;
+        int slot = (int) (timer.deadline >>> (level * BITS)) & (SLOTS - 1);
+        int index = level * SLOTS + slot;
+        List<Timer<T>> list = slots.get(index);
+        if (list == null) {
+            list = new ArrayList<>();
+            slots.set(index, list);
+        }
+        list.add(timer);
+        occupied[level] |= 1L << slot;
+    }
+
+    /**
+     * Returns the earliest time at which a timer may be due.
+     *
+     * @return time in milliseconds, {@link Long#MAX_VALUE} if empty
+     */
+    long nextDeadline() {
+        if (!due.isEmpty()) {
+            return current;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] != 0) {
+                return slotStart(level, Long.numberOfTrailingZeros(occupied[level]));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * The first millisecond of a slot. Timers of a slot share the digits above its level with the current time.
+     */
+    private long slotStart(int level, int slot) {
+        long mask = level + 1 >= LEVELS ? -1L : (1L << ((level + 1) * BITS)) - 1;
+        return (current & ~mask) | ((long) slot << (level * BITS));
+    }
+
+    /**
+     * Moves the current time forward, handing out the timers due.
+     *
+     * @param now     the current time in milliseconds, ignored if before the current time of the wheel
+     * @param expired receives the payload of each timer due
+     */
+    void advance(long now, Consumer<T> expired) {
+        while (true) {
+            for (Timer<T> timer : due) {
+                size--;
+                expired.accept(timer.payload);
+            }
+            due.clear();
+            int level = 0;
+            while (level < LEVELS && occupied[level] == 0) {
+                level++;
+            }
+            if (level == LEVELS) {
+                break;
+            }
+            int slot = Long.numberOfTrailingZeros(occupied[level]);
+            long start = slotStart(level, slot);
+            if (start > now) {
+                break;
+            }
+            current = start;
+            int index = level * SLOTS + slot;
+            List<Timer<T>> list = slots.get(index);
+            slots.set(index, null);
+            occupied[level] &= ~(1L << slot);
+            for (Timer<T> timer : list) {
+                insert(timer);
+            }
+        }
+        current = Math.max(current, now);
+    }
+
+    /**
+     * Returns the number of timers not handed out yet.
+     *
+     * @return count
+     */
+    int size() {
+        return size;
+    }
+
+    private static final class Timer<T> {
+        private final long deadline;
+        private final T payload;
+
+        private Timer(long deadline, T payload) {
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+    }
+}
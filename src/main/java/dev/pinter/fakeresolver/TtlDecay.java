@@ -0,0 +1,266 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aging of the shared records of a {@link FakeResolver}, see {@link FakeResolver#setClock(Clock)}.
+ * <p>
+ * An RRset starts aging when its first record is added, and expires when its lowest TTL has elapsed: its records are
+ * removed, all the RRsets due at the same time in one new snapshot. Expirations and scheduled changes are timers of a
+ * {@link TimingWheel}, advanced before the queries once the clock reaches the earliest timer, so nothing is scanned
+ * and no thread is needed; with a fixed clock time only moves when the test moves it.
+ * <p>
+ * Records are registered from the builders of the resolver, under its write lock, so registering never takes the
+ * lock of this class: timers wait in a queue until the next advance, which always takes this lock before the write
+ * lock of the resolver.
+ */
+final class TtlDecay {
+    private static final Logger logger = LoggerFactory.getLogger(TtlDecay.class);
+
+    static final int[] SECTIONS = {Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL};
+
+    private final FakeResolver resolver;
+    private final Clock clock;
+    private final Map<RecordKey, Aging> rrsets = new ConcurrentHashMap<>();
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextCheck = new AtomicLong(Long.MAX_VALUE);
+    private final TimingWheel<Object> wheel;
+
+    TtlDecay(FakeResolver resolver, Clock clock) {
+        this.resolver = resolver;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(clock.millis());
+    }
+
+    Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Starts the aging of the RRset of a record, or brings its expiry forward if the record has a lower TTL than the
+     * records added before. Records without TTL never expire.
+     *
+     * @param r record added to the shared records
+     */
+    void register(Record r) {
+        long ttl = r.getTTL();
+        if (ttl <= 0) {
+            return;
+        }
+        RecordKey key = RecordKey.of(r);
+        long now = clock.millis();
+        boolean[] changed = new boolean[1];
+        Aging updated = rrsets.compute(key, (k, aging) -> {
+            long deadline = (aging == null ? now : aging.addedAt) + ttl * 1000;
+            if (aging != null && deadline >= aging.deadline) {
+                return aging;
+            }
+            changed[0] = true;
+            return new Aging(aging == null ? now : aging.addedAt, deadline);
+        });
+        if (changed[0]) {
+            enqueue(updated.deadline, key);
+        }
+    }
+
+    /**
+     * Forgets the aging of an RRset removed from the shared records, so the RRset starts aging again if it is added
+     * back. Its timer is left in the wheel and ignored when it fires, as the RRset then has no aging or a later one.
+     *
+     * @param r last record removed from the RRset
+     */
+    void forget(Record r) {
+        rrsets.remove(RecordKey.of(r));
+    }
+
+    /**
+     * Schedules a change of the shared records.
+     *
+     * @param delayMillis time from now
+     * @param removed     records removed
+     * @param added       records added
+     */
+    void schedule(long delayMillis, Collection<Record> removed, Collection<Record> added) {
+        enqueue(clock.millis() + delayMillis, new Change(new ArrayList<>(removed), new ArrayList<>(added)));
+    }
+
+    private void enqueue(long deadline, Object payload) {
+        pending.add(new Pending(deadline, payload));
+        nextCheck.accumulateAndGet(deadline, Math::min);
+    }
+
+    /**
+     * Applies the expirations and changes due, if the clock reached the earliest timer.
+     *
+     * @return number of RRsets expired and changes applied
+     */
+    int advance() {
+        if (clock.millis() < nextCheck.get()) {
+            return 0;
+        }
+        synchronized (this) {
+            long now = clock.millis();
+            Pending timer;
+            while ((timer = pending.poll()) != null) {
+                wheel.schedule(timer.deadline, timer.payload);
+            }
+            List<Record> expired = new ArrayList<>();
+            List<Change> changes = new ArrayList<>();
+            int[] count = new int[1];
+            RecordStore store = resolver.getSharedRecords();
+            wheel.advance(now, payload -> {
+                if (payload instanceof Change) {
+                    changes.add((Change) payload);
+                } else {
+                    RecordKey key = (RecordKey) payload;
+                    Aging aging = rrsets.get(key);
+                    if (aging != null && aging.deadline <= now && rrsets.remove(key, aging)) {
+                        expired.addAll(store.lookup(key.getName(), key.getType(), key.getDClass()));
+                        count[0]++;
+                    }
+                }
+            });
+            if (!expired.isEmpty()) {
+                resolver.applyDiff(expired, List.of());
+                logger.debug("Expired {} RRsets, {} records", count[0], expired.size());
+            }
+            for (Change change : changes) {
+                resolver.applyDiff(change.removed, change.added);
+                count[0]++;
+            }
+            nextCheck.set(wheel.nextDeadline());
+            // timers queued since the wheel was drained
+            for (Pending queued : pending) {
+                nextCheck.accumulateAndGet(queued.deadline, Math::min);
+            }
+            return count[0];
+        }
+    }
+
+    /**
+     * Returns the response with the TTL of the aging records decreased by the time elapsed since they were added.
+     * Records of other sources, like the zones or the external resolver, are kept as they are.
+     *
+     * @param response the response, changed in place
+     * @return the response
+     */
+    Message decay(Message response) {
+        long now = clock.millis();
+        for (int section : SECTIONS) {
+            List<Record> records = response.getSection(section);
+            List<Record> decayed = null;
+            for (int i = 0; i < records.size(); i++) {
+                Record r = records.get(i);
+                Aging aging = rrsets.get(RecordKey.of(r));
+                if (aging == null) {
+                    continue;
+                }
+                long ttl = Math.max(0, r.getTTL() - (now - aging.addedAt) / 1000);
+                if (ttl != r.getTTL()) {
+                    if (decayed == null) {
+                        decayed = new ArrayList<>(records);
+                    }
+                    decayed.set(i, withTtl(r, ttl));
+                }
+            }
+            if (decayed != null) {
+                response.removeAllRecords(section);
+                for (Record r : decayed) {
+                    response.addRecord(r, section);
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Copies a record with another TTL. The TTL is patched in the uncompressed wire format, which keeps the case of
+     * the names.
+     */
+    static Record withTtl(Record r, long ttl) {
+        byte[] wire = r.toWire(Section.ANSWER);
+        int offset = r.getName().length() + 4;
+        wire[offset] = (byte) (ttl >>> 24);
+        wire[offset + 1] = (byte) (ttl >>> 16);
+        wire[offset + 2] = (byte) (ttl >>> 8);
+        wire[offset + 3] = (byte) ttl;
+        try {
+            return Record.fromWire(wire, Section.ANSWER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Forgets the aging of every RRset, when the records are cleared. Scheduled changes are kept.
+     */
+    void clear() {
+        rrsets.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "TtlDecay [clock=" + clock + ", rrsets=" + rrsets.size() + "]";
+    }
+
+    private static final class Aging {
+        private final long addedAt;
+        private final long deadline;
+
+        private Aging(long addedAt, long deadline) {
+            this.addedAt = addedAt;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final class Pending {
+        private final long deadline;
+        private final Object payload;
+
+        private Pending(long deadline, Object payload) {
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Change {
+        private final List<Record> removed;
+        private final List<Record> added;
+
+        private Change(List<Record> removed, List<Record> added) {
+            this.removed = removed;
+            this.added = added;
+        }
+    }
+}
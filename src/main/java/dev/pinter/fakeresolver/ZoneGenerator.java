@@ -0,0 +1,494 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.NSRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generator of large synthetic zones, for fixtures and benchmarks.
+ * <p>
+ * Records of the configured types are spread over a fixed number of owner names, picked with a uniform or Zipf
+ * distribution, or laid out as a deep tree of subdomains. The output only depends on the configuration and the seed:
+ * records are generated in chunks, each with its own {@link SplittableRandom} split from the seed in order, so the
+ * chunks are generated in parallel and handed out in the same order every time. Records are streamed to the
+ * destination chunk by chunk, memory does not grow with the size of the zone.
+ * <p>
+ * Generators are immutable and can be shared.
+ */
+public final class ZoneGenerator {
+    /**
+     * How owner names are picked.
+     */
+    public enum Distribution {
+        /**
+         * Every name is equally likely, {@code host<n>.<origin>}.
+         */
+        UNIFORM,
+        /**
+         * Name {@code n} is picked with a probability proportional to {@code 1 / n^s}, so a few names own most of
+         * the records, as the popular names of real zones. See {@link #withZipfExponent(double)}.
+         */
+        ZIPF,
+        /**
+         * Every name is equally likely, and names are nested in a tree of subdomains, each label being a child of
+         * the name of the previous labels, {@code n1.n0.n3.<origin>}. See {@link #withBranching(int)}.
+         */
+        DEEP
+    }
+
+    private static final int CHUNK_SIZE = ZoneLoader.BATCH_SIZE;
+    private static final int[] DEFAULT_TYPES = {Type.A, Type.AAAA, Type.MX, Type.CNAME, Type.TXT, Type.SRV};
+    private static final char[] TXT_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final Name origin;
+    private final long seed;
+    private final int names;
+    private final long records;
+    private final int[] types;
+    private final Distribution distribution;
+    private final double zipfExponent;
+    private final int branching;
+    private final long ttl;
+
+    private ZoneGenerator(Name origin, long seed, int names, long records, int[] types, Distribution distribution,
+                          double zipfExponent, int branching, long ttl) {
+        this.origin = origin;
+        this.seed = seed;
+        this.names = names;
+        this.records = records;
+        this.types = types;
+        this.distribution = distribution;
+        this.zipfExponent = zipfExponent;
+        this.branching = branching;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Creates a generator of 1000 records of every supported type over 100 names picked uniformly, with seed 0.
+     *
+     * @param domain zone origin, with or without the trailing dot
+     * @return the generator
+     * @throws TextParseException if the domain is not a valid name
+     */
+    public static ZoneGenerator forZone(String domain) throws TextParseException {
+        return new ZoneGenerator(ZoneLoader.toOrigin(domain), 0, 100, 1000, DEFAULT_TYPES, Distribution.UNIFORM,
+                1.0, 4, 300);
+    }
+
+    /**
+     * Returns a copy of this generator with another seed. Generators with the same configuration and seed generate
+     * the same records.
+     *
+     * @param seed the seed
+     * @return the new generator
+     */
+    public ZoneGenerator withSeed(long seed) {
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator spreading the records over a number of owner names.
+     *
+     * @param names number of owner names, CNAME and SRV owners not included
+     * @return the new generator
+     */
+    public ZoneGenerator withNames(int names) {
+        if (names < 1) {
+            throw new IllegalArgumentException("Invalid number of names");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator making a number of records, besides the SOA and NS records of the apex.
+     *
+     * @param records number of records
+     * @return the new generator
+     */
+    public ZoneGenerator withRecords(long records) {
+        if (records < 0) {
+            throw new IllegalArgumentException("Invalid number of records");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator making records of some types, each equally likely. Supported types are A,
+     * AAAA, MX, CNAME, TXT and SRV. A type given several times is proportionally more likely.
+     *
+     * @param types record types
+     * @return the new generator
+     */
+    public ZoneGenerator withTypes(int... types) {
+        if (types == null || types.length == 0) {
+            throw new IllegalArgumentException("Invalid types");
+        }
+        for (int type : types) {
+            if (Arrays.stream(DEFAULT_TYPES).noneMatch(t -> t == type)) {
+                throw new IllegalArgumentException("Unsupported type " + Type.string(type));
+            }
+        }
+        return new ZoneGenerator(origin, seed, names, records, types.clone(), distribution, zipfExponent, branching,
+                ttl);
+    }
+
+    /**
+     * Returns a copy of this generator picking the owner names with a distribution.
+     *
+     * @param distribution the distribution
+     * @return the new generator
+     */
+    public ZoneGenerator withDistribution(Distribution distribution) {
+        if (distribution == null) {
+            throw new IllegalArgumentException("Invalid distribution");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator with the exponent of the {@link Distribution#ZIPF} distribution, the higher
+     * the more skewed. Defaults to 1.
+     *
+     * @param exponent the exponent
+     * @return the new generator
+     */
+    public ZoneGenerator withZipfExponent(double exponent) {
+        if (!(exponent > 0)) {
+            throw new IllegalArgumentException("Invalid exponent");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, exponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator with the number of children of each name of the {@link Distribution#DEEP}
+     * tree. The depth of the tree is about {@code log(names) / log(branching)}. Defaults to 4.
+     *
+     * @param branching number of children of each name
+     * @return the new generator
+     */
+    public ZoneGenerator withBranching(int branching) {
+        if (branching < 1) {
+            throw new IllegalArgumentException("Invalid branching");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns a copy of this generator with the TTL of the records.
+     *
+     * @param ttl TTL in seconds
+     * @return the new generator
+     */
+    public ZoneGenerator withTtl(long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Invalid TTL");
+        }
+        return new ZoneGenerator(origin, seed, names, records, types, distribution, zipfExponent, branching, ttl);
+    }
+
+    /**
+     * Returns the zone origin.
+     *
+     * @return the origin
+     */
+    public Name getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Generates the zone, handing out the records in batches: the SOA and NS records of the apex first, then the
+     * generated records.
+     *
+     * @param sink receives each batch, the list must not be kept
+     * @return the number of records generated
+     */
+    public long generate(Consumer<List<Record>> sink) {
+        try {
+            return emit(sink::accept);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the zone to a file in master format.
+     *
+     * @param zoneFile zonefile path
+     * @return the number of records written
+     * @throws IOException if unable to write the file
+     */
+    public long writeZoneFile(Path zoneFile) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(zoneFile, StandardCharsets.US_ASCII)) {
+            out.write("$ORIGIN " + origin);
+            out.newLine();
+            return emit(batch -> {
+                for (Record r : batch) {
+                    out.write(r.toString());
+                    out.newLine();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the zone to a binary snapshot, to be loaded with {@link FakeResolver#fromSnapshot(Path)}.
+     *
+     * @param snapshot snapshot path
+     * @return the number of records written
+     * @throws IOException if unable to write the file
+     */
+    public long writeSnapshot(Path snapshot) throws IOException {
+        try (RecordSnapshot.Writer writer = new RecordSnapshot.Writer(snapshot, 0)) {
+            emit(writer::addAll);
+            return writer.commit();
+        }
+    }
+
+    private interface BatchSink {
+        void accept(List<Record> batch) throws IOException;
+    }
+
+    private long emit(BatchSink sink) throws IOException {
+        sink.accept(apex());
+        AtomicReferenceArray<Name> owners = new AtomicReferenceArray<>(names);
+        ZipfSampler zipf = distribution == Distribution.ZIPF ? new ZipfSampler(names, zipfExponent) : null;
+        long chunks = (records + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int wave = Math.max(1, Runtime.getRuntime().availableProcessors());
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[wave];
+        for (long first = 0; first < chunks; first += wave) {
+            int size = (int) Math.min(wave, chunks - first);
+            for (int i = 0; i < size; i++) {
+                randoms[i] = root.split();
+            }
+            long firstChunk = first;
+            List<List<Record>> batches = IntStream.range(0, size).parallel()
+                    .mapToObj(i -> chunk(firstChunk + i, randoms[i], owners, zipf))
+                    .collect(Collectors.toList());
+            for (List<Record> batch : batches) {
+                sink.accept(batch);
+            }
+        }
+        return records + 2;
+    }
+
+    private List<Record> apex() {
+        try {
+            Name ns = Name.concatenate(Name.fromConstantString("ns1"), origin);
+            Name admin = Name.concatenate(Name.fromConstantString("hostmaster"), origin);
+            return List.of(
+                    new SOARecord(origin, DClass.IN, ttl, ns, admin, 1, 3600, 600, 86400, ttl),
+                    new NSRecord(origin, DClass.IN, ttl, ns));
+        } catch (NameTooLongException e) {
+            throw new IllegalArgumentException("Origin is too long", e);
+        }
+    }
+
+    private List<Record> chunk(long chunk, SplittableRandom random, AtomicReferenceArray<Name> owners,
+                               ZipfSampler zipf) {
+        long start = chunk * CHUNK_SIZE;
+        long end = Math.min(start + CHUNK_SIZE, records);
+        List<Record> batch = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            batch.add(record(i, random, owners, zipf));
+        }
+        return batch;
+    }
+
+    private Record record(long index, SplittableRandom random, AtomicReferenceArray<Name> owners,
+                          ZipfSampler zipf) {
+        int type = types[random.nextInt(types.length)];
+        Name owner = owner(pick(random, zipf), owners);
+        switch (type) {
+            case Type.A:
+                return new ARecord(owner, DClass.IN, ttl, address(random, 4, (byte) 10));
+            case Type.AAAA:
+                return new AAAARecord(owner, DClass.IN, ttl, address(random, 16, (byte) 0xfd));
+            case Type.MX:
+                return new MXRecord(owner, DClass.IN, ttl, random.nextInt(1, 6) * 10,
+                        owner(random.nextInt(names), owners));
+            case Type.CNAME:
+                return new CNAMERecord(child("alias" + index, origin), DClass.IN, ttl, owner);
+            case Type.TXT:
+                char[] text = new char[random.nextInt(16, 65)];
+                for (int c = 0; c < text.length; c++) {
+                    text[c] = TXT_CHARS[random.nextInt(TXT_CHARS.length)];
+                }
+                return new TXTRecord(owner, DClass.IN, ttl, new String(text));
+            default:
+                return new SRVRecord(child("_svc" + index, child("_tcp", owner)), DClass.IN, ttl,
+                        random.nextInt(1, 11), random.nextInt(0, 101), random.nextInt(1024, 65536),
+                        owner(random.nextInt(names), owners));
+        }
+    }
+
+    private int pick(SplittableRandom random, ZipfSampler zipf) {
+        return zipf != null ? zipf.sample(random) - 1 : random.nextInt(names);
+    }
+
+    private static InetAddress address(SplittableRandom random, int length, byte prefix) {
+        byte[] address = new byte[length];
+        for (int i = 0; i < length; i += 4) {
+            int bits = random.nextInt();
+            address[i] = (byte) (bits >>> 24);
+            address[i + 1] = (byte) (bits >>> 16);
+            address[i + 2] = (byte) (bits >>> 8);
+            address[i + 3] = (byte) bits;
+        }
+        address[0] = prefix;
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the name of an index, built once and shared by every record of the name.
+     */
+    private Name owner(int index, AtomicReferenceArray<Name> owners) {
+        Name name = owners.get(index);
+        if (name == null) {
+            name = distribution == Distribution.DEEP ? deepName(index, owners) : child("host" + index, origin);
+            if (!owners.compareAndSet(index, null, name)) {
+                name = owners.get(index);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Names of the tree in breadth-first order: the parent of name {@code i} is name {@code i / branching - 1},
+     * or the origin for the first names.
+     */
+    private Name deepName(int index, AtomicReferenceArray<Name> owners) {
+        int parent = index / branching - 1;
+        Name base = parent < 0 ? origin : owner(parent, owners);
+        return child("n" + index % branching, base);
+    }
+
+    private static Name child(String label, Name parent) {
+        try {
+            return Name.concatenate(Name.fromConstantString(label), parent);
+        } catch (NameTooLongException e) {
+            throw new IllegalArgumentException("Generated name is too long", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneGenerator [origin=" + origin + ", seed=" + seed + ", names=" + names + ", records=" + records
+                + ", distribution=" + distribution + "]";
+    }
+
+    /**
+     * Zipf sampler by rejection-inversion (Hormann and Derflinger), constant time and memory whatever the number of
+     * elements.
+     */
+    private static final class ZipfSampler {
+        private final int elements;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralElements;
+        private final double s;
+
+        ZipfSampler(int elements, double exponent) {
+            this.elements = elements;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralElements = hIntegral(elements + 0.5);
+            s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        /**
+         * Returns a number between 1 and the number of elements.
+         */
+        int sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralElements + random.nextDouble() * (hIntegralX1 - hIntegralElements);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > elements) {
+                    k = elements;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        /**
+         * {@code log(1 + x) / x}, accurate near 0.
+         */
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        /**
+         * {@code (exp(x) - 1) / x}, accurate near 0.
+         */
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
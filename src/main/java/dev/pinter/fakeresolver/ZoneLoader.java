@@ -0,0 +1,126 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.Master;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.TextParseException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming parser of master format zone files.
+ * <p>
+ * Records are handed out in batches as they are parsed, without building a {@link org.xbill.DNS.Zone}, so the memory
+ * used by the parser does not depend on the size of the zone.
+ */
+final class ZoneLoader {
+    static final int BATCH_SIZE = 4096;
+
+    private ZoneLoader() {
+    }
+
+    /**
+     * Converts a domain to an absolute name.
+     *
+     * @param domain domain name, with or without the trailing dot
+     * @return the name
+     * @throws TextParseException if the domain is not a valid name
+     */
+    static Name toOrigin(String domain) throws TextParseException {
+        if (domain == null) {
+            throw new IllegalArgumentException("Invalid domain");
+        }
+        if (!domain.endsWith(".")) {
+            domain += ".";
+        }
+        return Name.fromString(domain);
+    }
+
+    /**
+     * Opens a zone file, decompressing it if it is gzipped.
+     *
+     * @param zoneFile zonefile path
+     * @return the stream
+     * @throws IOException if unable to open file
+     */
+    static InputStream open(Path zoneFile) throws IOException {
+        return decompress(Files.newInputStream(zoneFile));
+    }
+
+    /**
+     * Wraps the stream with a decompressor if it starts with the gzip magic number.
+     *
+     * @param in the stream
+     * @return the uncompressed stream
+     * @throws IOException if unable to read the stream
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        buffered.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            return new GZIPInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * Parses the zone, handing out the records in batches of {@link #BATCH_SIZE}.
+     *
+     * @param origin zone origin
+     * @param in     master format stream, closed when done
+     * @param sink   receives each batch, the list must not be kept
+     * @return the number of records parsed
+     * @throws IOException if unable to read or parse the zone
+     */
+    static long load(Name origin, InputStream in, Consumer<List<Record>> sink) throws IOException {
+        long count = 0;
+        List<Record> batch = new ArrayList<>(BATCH_SIZE);
+        Master master = new Master(in, origin);
+        try {
+            Record r;
+            while ((r = master.nextRecord()) != null) {
+                batch.add(r);
+                if (batch.size() == BATCH_SIZE) {
+                    sink.accept(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+                count += batch.size();
+            }
+        } finally {
+            master.close();
+            in.close();
+        }
+        return count;
+    }
+}
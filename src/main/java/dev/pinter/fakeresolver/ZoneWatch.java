@@ -0,0 +1,291 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Serial;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A zone file watched for changes, created by {@link FakeResolver#watchZoneFile(String, Path)}.
+ * <p>
+ * The records are kept as a separate zone of the resolver, like the zones loaded with
+ * {@link FakeResolver#loadZone(String, Path)}. When the file changes it is parsed again and compared to the records
+ * loaded before, and only the difference is applied to the zone, like an IXFR: the records removed and added are
+ * published at once in a new snapshot, so queries never see a partially loaded zone. If the zone was replaced or
+ * dropped in the resolver, the watch stops.
+ * <p>
+ * Once a serial was loaded, a change must bump it: a file whose SOA serial is older than the one loaded, a file with
+ * the same serial but different contents, and a file without SOA record are ignored, as they are usually caught
+ * while being written. The file is reloaded once no event was reported for a short while, so an editor writing it in
+ * several steps causes a single reload, and a file that fails to parse keeps the previous records.
+ */
+public class ZoneWatch implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZoneWatch.class);
+    private static final long SETTLE_MILLIS = 100;
+
+    private final FakeResolver resolver;
+    private final Name origin;
+    private final Path zoneFile;
+    private final WatchService watcher;
+    private final Thread thread;
+    private List<Record> current = Collections.emptyList();
+    private RecordStore store;
+    private long checksum = -1;
+    private volatile long serial = -1;
+    private volatile long updates;
+
+    private ZoneWatch(FakeResolver resolver, Name origin, Path zoneFile, WatchService watcher) {
+        this.resolver = resolver;
+        this.origin = origin;
+        this.zoneFile = zoneFile;
+        this.watcher = watcher;
+        this.thread = new Thread(this::run, "fakeresolver-watch-" + origin);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Loads the zone file and starts watching it.
+     *
+     * @param resolver resolver receiving the records
+     * @param origin   zone origin
+     * @param zoneFile zonefile path
+     * @return the watch
+     * @throws IOException if unable to load the zone, or to watch its directory
+     */
+    static ZoneWatch start(FakeResolver resolver, Name origin, Path zoneFile) throws IOException {
+        Path file = zoneFile.toAbsolutePath();
+        WatchService watcher = file.getFileSystem().newWatchService();
+        ZoneWatch watch = new ZoneWatch(resolver, origin, file, watcher);
+        try {
+            // registered before the first load, so a write in between is reported instead of lost
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watch.reload();
+        } catch (IOException e) {
+            watcher.close();
+            throw e;
+        }
+        watch.thread.start();
+        return watch;
+    }
+
+    /**
+     * Reloads the zone file now, applying the changes to the resolver. Changes are detected automatically, this is
+     * only needed when the file system does not report them.
+     *
+     * @return true if the records changed
+     * @throws IOException if unable to read or parse the zone
+     */
+    public synchronized boolean reload() throws IOException {
+        // the checksum and the records come from the same read, so they always describe the same contents
+        byte[] zone = Files.readAllBytes(zoneFile);
+        long sum = RecordSnapshot.zoneChecksum(origin, zone);
+        if (sum == checksum) {
+            return false;
+        }
+        List<Record> records = new ArrayList<>();
+        ZoneLoader.load(origin, ZoneLoader.decompress(new ByteArrayInputStream(zone)), records::addAll);
+        long newSerial = serialOf(records);
+        checksum = sum;
+        if (serial >= 0 && newSerial < 0) {
+            logger.warn("Ignoring zone '{}': no SOA record, the file may be partially written", origin);
+            return false;
+        }
+        if (serial >= 0 && newSerial == serial) {
+            logger.warn("Ignoring zone '{}': contents changed but serial {} was not bumped", origin, serial);
+            return false;
+        }
+        if (serial >= 0 && Serial.compare(newSerial, serial) < 0) {
+            logger.warn("Ignoring zone '{}': serial {} is older than {}", origin, newSerial, serial);
+            return false;
+        }
+        List<Record> removed = new ArrayList<>();
+        List<Record> added = new ArrayList<>();
+        diff(current, records, removed, added);
+        if (store == null) {
+            store = RecordStore.of(records);
+            resolver.putZone(origin, store);
+        } else if (removed.isEmpty() && added.isEmpty()) {
+            return false;
+        } else {
+            RecordStore changed = store.toBuilder().removeAll(removed).addAll(added).build();
+            if (!resolver.replaceZone(origin, store, changed)) {
+                logger.warn("Stopped watching zone '{}': it was replaced or dropped", origin);
+                watcher.close();
+                return false;
+            }
+            store = changed;
+        }
+        current = records;
+        serial = newSerial;
+        updates++;
+        logger.debug("Zone '{}' updated to serial {}: {} records added, {} removed", origin, newSerial,
+                added.size(), removed.size());
+        return true;
+    }
+
+    /**
+     * Returns the SOA serial of the records loaded.
+     *
+     * @return the serial, or -1 if the zone has no SOA record
+     */
+    public long getSerial() {
+        return serial;
+    }
+
+    /**
+     * Returns the number of times the records were changed, including the first load.
+     *
+     * @return updates applied
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Stops watching the file. The zone loaded is kept by the resolver.
+     *
+     * @throws IOException if unable to close the watch service
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    private void run() {
+        Path name = zoneFile.getFileName();
+        try {
+            while (true) {
+                if (changed(watcher.take(), name)) {
+                    // wait until the file is no longer being written
+                    WatchKey key;
+                    while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        changed(key, name);
+                    }
+                    try {
+                        reload();
+                    } catch (IOException e) {
+                        logger.warn("Unable to reload zone '{}': {}", origin, e.getMessage());
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Stopped watching zone '{}'", origin);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean changed(WatchKey key, Path name) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    private long serialOf(List<Record> records) {
+        for (Record r : records) {
+            if (r instanceof SOARecord && r.getName().equals(origin)) {
+                return ((SOARecord) r).getSerial();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the records to remove and to add to go from one record set to the other. Duplicated records are
+     * counted, so each copy is removed or added. Records are compared with their TTL, which
+     * {@link Record#equals(Object)} ignores, so a record whose TTL changed is removed and added again.
+     *
+     * @param from    records loaded
+     * @param to      records wanted
+     * @param removed receives the records only in {@code from}
+     * @param added   receives the records only in {@code to}
+     */
+    static void diff(List<Record> from, List<Record> to, List<Record> removed, List<Record> added) {
+        Map<TtlRecord, Integer> counts = new HashMap<>(from.size() * 2);
+        for (Record r : from) {
+            counts.merge(new TtlRecord(r), 1, Integer::sum);
+        }
+        for (Record r : to) {
+            TtlRecord key = new TtlRecord(r);
+            Integer n = counts.get(key);
+            if (n == null) {
+                added.add(r);
+            } else if (n == 1) {
+                counts.remove(key);
+            } else {
+                counts.put(key, n - 1);
+            }
+        }
+        for (Map.Entry<TtlRecord, Integer> e : counts.entrySet()) {
+            for (int i = 0; i < e.getValue(); i++) {
+                removed.add(e.getKey().record);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneWatch [zone=" + origin + ", file=" + zoneFile + ", serial=" + serial + "]";
+    }
+
+    private static final class TtlRecord {
+        private final Record record;
+
+        private TtlRecord(Record record) {
+            this.record = record;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TtlRecord)) {
+                return false;
+            }
+            Record other = ((TtlRecord) o).record;
+            return record.equals(other) && record.getTTL() == other.getTTL();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * record.hashCode() + Long.hashCode(record.getTTL());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Allocation regressions of the query path, measured with the per-thread allocation counter of the JVM. Only names
+ * that exist in the shared records are covered: NXDOMAIN answers and wildcard expansion walk the ancestors of the
+ * name, building a {@link Name} per label, and routing a query to a loaded zone builds one per apex depth.
+ */
+public class AllocationTest {
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final Logger resolverLogger = LoggerFactory.getLogger(FakeResolver.class);
+
+    private static volatile Object sink;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @BeforeEach
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private long allocatedBytes() {
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static List<Record> records() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Name name = Name.fromString("host" + i + ".alloc.test.");
+            records.add(new ARecord(name, DClass.IN, 60L, InetAddress.getByName("192.0.2.1")));
+            records.add(new MXRecord(name, DClass.IN, 60L, 10, Name.fromString("mx.alloc.test.")));
+        }
+        return records;
+    }
+
+    @Test
+    public void shouldLookupWithoutAllocating() throws IOException {
+        RecordStore store = RecordStore.of(records());
+        Name name = Name.fromString("HOST5.alloc.test.");
+        int found = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            found += lookup(store, name);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            found += lookup(store, name);
+        }
+        long allocated = allocatedBytes() - start;
+        assertEquals(2 * (WARMUP + ITERATIONS), found);
+        assertTrue(allocated < 1024, "lookups allocated " + allocated + " bytes");
+    }
+
+    private static int lookup(RecordStore store, Name name) {
+        if (!store.isInternal(name) || !store.nameExists(name)) {
+            return 0;
+        }
+        return store.lookup(name, Type.A, DClass.IN).size() + store.lookup(name, Type.MX, DClass.IN).size();
+    }
+
+    @Test
+    public void shouldOnlyAllocateTheResponse() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecords(records());
+        Message query = Message.newQuery(Record.newRecord(Name.fromString("host5.alloc.test."), Type.A, DClass.IN));
+        Record answer = fakeResolver.send(query).getSection(Section.ANSWER).get(0);
+
+        for (int i = 0; i < WARMUP; i++) {
+            sink = fakeResolver.send(query);
+            sink = response(query, answer);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = response(query, answer);
+        }
+        long baseline = (allocatedBytes() - start) / ITERATIONS;
+        start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = fakeResolver.send(query);
+        }
+        long perQuery = (allocatedBytes() - start) / ITERATIONS;
+        assertTrue(perQuery <= baseline + 64,
+                "query allocated " + perQuery + " bytes, a bare response " + baseline + " bytes");
+    }
+
+    /**
+     * Builds the same response as the resolver, and logs it the same way, the allocation every query needs whatever
+     * the log level.
+     */
+    private static Message response(Message query, Record answer) {
+        if (resolverLogger.isDebugEnabled()) {
+            resolverLogger.debug("Found '{}' internally", query.getQuestion().getName());
+        }
+        Message response = new Message(0);
+        response.getHeader().setRcode(0);
+        response.addRecord(answer, Section.ANSWER);
+        response.getHeader().setID(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        return response;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnswerRotationTest {
+    private FakeResolver fakeResolver;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        fakeResolver = new FakeResolver(StubResolver.answering());
+        for (int i = 1; i <= 3; i++) {
+            fakeResolver.addRecord(new ARecord(Name.fromString("pool.rotation.test."), DClass.IN, 60L,
+                    InetAddress.getByName("192.0.2." + i)));
+        }
+    }
+
+    private List<String> addresses() throws IOException {
+        List<String> addresses = new ArrayList<>();
+        Message response = fakeResolver.send(newQuery("pool.rotation.test."));
+        for (Record r : response.getSection(Section.ANSWER)) {
+            addresses.add(((ARecord) r).getAddress().getHostAddress());
+        }
+        return addresses;
+    }
+
+    @Test
+    public void shouldAnswerInInsertionOrder() throws IOException {
+        assertEquals(List.of("192.0.2.1", "192.0.2.2", "192.0.2.3"), addresses());
+        assertEquals(List.of("192.0.2.1", "192.0.2.2", "192.0.2.3"), addresses());
+    }
+
+    @Test
+    public void shouldRotateRoundRobin() throws IOException {
+        fakeResolver.setAnswerRotation(AnswerRotation.roundRobin());
+        assertEquals(List.of("192.0.2.1", "192.0.2.2", "192.0.2.3"), addresses());
+        assertEquals(List.of("192.0.2.2", "192.0.2.3", "192.0.2.1"), addresses());
+        assertEquals(List.of("192.0.2.3", "192.0.2.1", "192.0.2.2"), addresses());
+        assertEquals(List.of("192.0.2.1", "192.0.2.2", "192.0.2.3"), addresses());
+    }
+
+    @Test
+    public void shouldSpreadConcurrentQueriesEvenly() throws Exception {
+        fakeResolver.setAnswerRotation(AnswerRotation.roundRobin().withLimit(1));
+        Map<String, LongAdder> first = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 3000; i++) {
+                        List<String> answer = addresses();
+                        assertEquals(1, answer.size());
+                        first.computeIfAbsent(answer.get(0), k -> new LongAdder()).increment();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : tasks) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, first.size());
+        first.values().forEach(n -> assertEquals(8000, n.sum()));
+    }
+
+    @Test
+    public void shouldShuffle() throws IOException {
+        fakeResolver.setAnswerRotation(AnswerRotation.random());
+        Set<List<String>> orders = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            List<String> answer = addresses();
+            assertEquals(3, answer.size());
+            orders.add(answer);
+        }
+        assertEquals(6, orders.size());
+    }
+
+    @Test
+    public void shouldPreferHeavierRecords() throws IOException {
+        fakeResolver.setAnswerRotation(Name.fromString("pool.rotation.test."), Type.A,
+                AnswerRotation.weighted(r -> ((ARecord) r).getAddress().getAddress()[3] == 3 ? 8 : 1));
+        Map<String, Integer> first = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            first.merge(addresses().get(0), 1, Integer::sum);
+        }
+        assertTrue(first.get("192.0.2.3") > 7500, "first: " + first);
+        assertTrue(first.get("192.0.2.1") > 500, "first: " + first);
+
+        fakeResolver.setAnswerRotation(Name.fromString("pool.rotation.test."), Type.A, null);
+        assertEquals(List.of("192.0.2.1", "192.0.2.2", "192.0.2.3"), addresses());
+        assertThrows(IllegalArgumentException.class, () -> AnswerRotation.random().withLimit(0));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CassetteResolverTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldReplayRecordedResponses() throws Exception {
+        Path file = tempDir.resolve("external.cassette");
+        StubResolver external = StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext"));
+        try (CassetteResolver recorder = CassetteResolver.record(external, file)) {
+            FakeResolver fakeResolver = new FakeResolver(recorder);
+            assertEquals(1, fakeResolver.send(newQuery("ext.test.", Type.TXT)).getSection(Section.ANSWER).size());
+            fakeResolver.sendAsync(newQuery("missing.test.", Type.A)).toCompletableFuture().get();
+            assertTrue(recorder.isRecording());
+            assertEquals(2, recorder.size());
+        }
+
+        CassetteResolver player = CassetteResolver.replay(file);
+        assertFalse(player.isRecording());
+        assertEquals(2, player.size());
+        FakeResolver fakeResolver = new FakeResolver(player);
+        Message query = newQuery("EXT.test.", Type.TXT);
+        Message response = fakeResolver.sendAsync(query).toCompletableFuture().get();
+        assertEquals(query.getHeader().getID(), response.getHeader().getID());
+        assertEquals("ext", ((TXTRecord) response.getSection(Section.ANSWER).get(0)).getStrings().get(0));
+        assertEquals(2, external.getQueries());
+    }
+
+    @Test
+    public void shouldFailWhenNotRecorded() throws Exception {
+        Path file = tempDir.resolve("empty.cassette");
+        CassetteResolver.record(StubResolver.answering(), file).close();
+        FakeResolver fakeResolver = new FakeResolver(CassetteResolver.replay(file));
+        assertThrows(IOException.class, () -> fakeResolver.send(newQuery("ext.test.", Type.A)));
+    }
+
+    @Test
+    public void shouldRejectInvalidFile() throws IOException {
+        Path file = Files.write(tempDir.resolve("invalid.cassette"), new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> CassetteResolver.replay(file));
+    }
+
+    @Test
+    public void shouldRejectTruncatedFile() throws Exception {
+        Path file = tempDir.resolve("external.cassette");
+        try (CassetteResolver recorder = CassetteResolver.record(StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext")), file)) {
+            FakeResolver fakeResolver = new FakeResolver(recorder);
+            fakeResolver.send(newQuery("ext.test.", Type.TXT));
+            fakeResolver.send(newQuery("missing.test.", Type.A));
+        }
+        byte[] cassette = Files.readAllBytes(file);
+        for (int length = 12; length < cassette.length; length++) {
+            Path truncated = Files.write(tempDir.resolve("truncated" + length + ".cassette"),
+                    Arrays.copyOf(cassette, length));
+            assertThrows(IOException.class, () -> CassetteResolver.replay(truncated));
+        }
+
+        byte[] negativeCount = cassette.clone();
+        Arrays.fill(negativeCount, 8, 12, (byte) 0xFF);
+        Path invalid = Files.write(tempDir.resolve("count.cassette"), negativeCount);
+        assertThrows(IOException.class, () -> CassetteResolver.replay(invalid));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactRecordStoreTest {
+    private static final String ZONE = "$TTL 300\n"
+            + "@ IN SOA ns1 hostmaster 1 3600 600 86400 60\n"
+            + "@ IN NS ns1\n"
+            + "ns1 IN A 192.0.2.1\n"
+            + "WWW IN A 192.0.2.10\n"
+            + "www IN A 192.0.2.11\n"
+            + "www IN AAAA 2001:db8::10\n"
+            + "alias IN CNAME Www\n"
+            + "chain IN CNAME alias\n"
+            + "outside IN CNAME www.example.com.\n"
+            + "mail IN MX 10 www\n"
+            + "*.wild IN TXT \"wildcard\"\n"
+            + "host.deep.empty IN A 192.0.2.20\n"
+            + "old IN DNAME new.compact.test.\n"
+            + "www.new IN A 192.0.2.30\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldAnswerLikeHeapZone() throws IOException {
+        Path file = tempDir.resolve("compact.zone");
+        Files.writeString(file, ZONE);
+        FakeResolver heap = new FakeResolver(StubResolver.answering());
+        heap.loadZone("compact.test", file);
+        FakeResolver compact = new FakeResolver(StubResolver.answering());
+        compact.setCompactZones(true);
+        compact.loadZone("compact.test", file);
+
+        String[][] questions = {
+                {"www.compact.test.", "A"}, {"WWW.Compact.TEST.", "AAAA"}, {"alias.compact.test.", "A"},
+                {"chain.compact.test.", "AAAA"}, {"outside.compact.test.", "A"}, {"mail.compact.test.", "MX"},
+                {"any.wild.compact.test.", "TXT"}, {"a.b.wild.compact.test.", "TXT"}, {"wild.compact.test.", "TXT"},
+                {"empty.compact.test.", "A"}, {"deep.empty.compact.test.", "A"}, {"host.deep.empty.compact.test.", "A"},
+                {"missing.compact.test.", "A"}, {"www.compact.test.", "TXT"}, {"www.old.compact.test.", "A"},
+                {"compact.test.", "NS"}, {"compact.test.", "SOA"}, {"x.missing.compact.test.", "MX"}};
+        for (String[] q : questions) {
+            Message query = newQuery(q[0], Type.value(q[1]));
+            assertEquals(toString(heap.send(query)), toString(compact.send(query)), q[0] + " " + q[1]);
+        }
+        assertEquals(heap.getZoneRecords("compact.test"), compact.getZoneRecords("compact.test"));
+    }
+
+    @Test
+    public void shouldKeepRRsetOrderAndRotate() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            records.add(new ARecord(Name.fromString("rr.compact.test."), DClass.IN, 60L,
+                    InetAddress.getByName("192.0.2." + i)));
+        }
+        records.add(new AAAARecord(Name.fromString("rr.compact.test."), DClass.IN, 60L,
+                InetAddress.getByName("2001:db8::1")));
+        CompactRecordStore store = CompactRecordStore.of(records);
+        assertEquals(records.subList(0, 3), store.lookup(Name.fromString("RR.compact.test."), Type.A, DClass.IN));
+        assertEquals(records.subList(3, 4), store.lookup(Name.fromString("rr.compact.test."), Type.AAAA, DClass.IN));
+        assertTrue(store.lookup(Name.fromString("rr.compact.test."), Type.A, DClass.CH).isEmpty());
+        assertTrue(store.hasType(Type.AAAA));
+        assertFalse(store.hasType(Type.MX));
+
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.setCompactZones(true);
+        fakeResolver.setAnswerRotation(AnswerRotation.roundRobin());
+        fakeResolver.loadZone("compact.test", records);
+        Message query = newQuery("rr.compact.test.", Type.A);
+        Record first = fakeResolver.send(query).getSection(Section.ANSWER).getFirst();
+        Record second = fakeResolver.send(query).getSection(Section.ANSWER).getFirst();
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void shouldServeLargeGeneratedZone() throws IOException {
+        ZoneGenerator generator = ZoneGenerator.forZone("gen.compact.test").withRecords(200_000).withNames(50_000)
+                .withDistribution(ZoneGenerator.Distribution.DEEP).withSeed(7);
+        FakeResolver heap = new FakeResolver(StubResolver.answering());
+        heap.loadZone(generator);
+        FakeResolver compact = new FakeResolver(StubResolver.answering());
+        compact.setCompactZones(true);
+        compact.loadZone(generator);
+
+        List<Record> records = heap.getZoneRecords("gen.compact.test");
+        assertEquals(200_002, records.size());
+        assertEquals(records.size(), compact.getZoneRecords("gen.compact.test").size());
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 2000; i++) {
+            Record r = records.get(random.nextInt(records.size()));
+            Name name = i % 4 == 0 ? new Name(r.getName(), 1) : r.getName();
+            Message query = Message.newQuery(Record.newRecord(name, i % 3 == 0 ? Type.TXT : r.getType(), DClass.IN));
+            assertEquals(toString(heap.send(query)), toString(compact.send(query)), query.getQuestion().toString());
+        }
+    }
+
+    private static String toString(Message response) {
+        StringBuilder sb = new StringBuilder(response.getRcode() + "\n");
+        for (int section : new int[]{Section.ANSWER, Section.AUTHORITY, Section.ADDITIONAL}) {
+            for (Record r : response.getSection(section)) {
+                sb.append(section).append(' ').append(r).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
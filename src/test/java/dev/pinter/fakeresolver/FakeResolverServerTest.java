@@ -0,0 +1,148 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FakeResolverServerTest {
+    private static FakeResolver newFakeResolver() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecord(new ARecord(Name.fromString("www.server.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+        for (int i = 0; i < 50; i++) {
+            fakeResolver.addRecord(new TXTRecord(Name.fromString("big.server.test."), DClass.IN, 60L,
+                    "record number " + i + " padding the response beyond the UDP limit"));
+        }
+        return fakeResolver;
+    }
+
+    private static SimpleResolver client(FakeResolverServer server) {
+        SimpleResolver resolver = new SimpleResolver(server.getAddress());
+        resolver.setTimeout(Duration.ofSeconds(5));
+        return resolver;
+    }
+
+    @Test
+    public void shouldAnswerOverUDP() throws IOException {
+        try (FakeResolverServer server = FakeResolverServer.start(newFakeResolver())) {
+            Message response = client(server).send(newQuery("www.server.test.", Type.A));
+            assertTrue(response.getHeader().getFlag(Flags.QR));
+            assertEquals(Rcode.NOERROR, response.getRcode());
+            assertEquals(1, response.getSection(Section.ANSWER).size());
+            assertEquals(Rcode.NXDOMAIN, client(server).send(newQuery("nx.server.test.", Type.A)).getRcode());
+        }
+    }
+
+    @Test
+    public void shouldTruncateOverUDP() throws IOException {
+        try (FakeResolverServer server = FakeResolverServer.start(newFakeResolver())) {
+            SimpleResolver resolver = client(server);
+            resolver.setIgnoreTruncation(true);
+            Message truncated = resolver.send(newQuery("big.server.test.", Type.TXT));
+            assertTrue(truncated.getHeader().getFlag(Flags.TC));
+
+            Message retried = client(server).send(newQuery("big.server.test.", Type.TXT));
+            assertEquals(50, retried.getSection(Section.ANSWER).size());
+        }
+    }
+
+    @Test
+    public void shouldAnswerOverTCP() throws IOException {
+        try (FakeResolverServer server = FakeResolverServer.start(newFakeResolver())) {
+            SimpleResolver resolver = client(server);
+            resolver.setTCP(true);
+            assertEquals(50, resolver.send(newQuery("big.server.test.", Type.TXT)).getSection(Section.ANSWER).size());
+        }
+    }
+
+    @Test
+    public void shouldAnswerPipelinedQueries() throws IOException {
+        try (FakeResolverServer server = FakeResolverServer.start(newFakeResolver());
+             Socket socket = new Socket(server.getAddress().getAddress(), server.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                Message query = newQuery(i % 2 == 0 ? "www.server.test." : "big.server.test.", Type.TXT);
+                ids.add(query.getHeader().getID());
+                byte[] wire = query.toWire();
+                out.writeShort(wire.length);
+                out.write(wire);
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < 10; i++) {
+                byte[] wire = new byte[in.readUnsignedShort()];
+                in.readFully(wire);
+                Message response = new Message(wire);
+                assertTrue(ids.contains(response.getHeader().getID()));
+                assertEquals(Rcode.NOERROR, response.getRcode());
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepServingAfterFailedQuery() throws IOException {
+        // a null response makes building the answer fail
+        StubResolver failing = new StubResolver(query ->
+                query.getQuestion().getName().toString().startsWith("fail.") ? null : newResponse(query));
+        try (FakeResolverServer server = FakeResolverServer.start(failing)) {
+            SimpleResolver udp = client(server);
+            udp.setTimeout(Duration.ofMillis(200));
+            assertThrows(IOException.class, () -> udp.send(newQuery("fail.server.test.", Type.A)));
+            assertEquals(Rcode.NOERROR, client(server).send(newQuery("www.server.test.", Type.A)).getRcode());
+
+            SimpleResolver tcp = client(server);
+            tcp.setTCP(true);
+            tcp.setTimeout(Duration.ofMillis(200));
+            assertThrows(IOException.class, () -> tcp.send(newQuery("fail.server.test.", Type.A)));
+            tcp.setTimeout(Duration.ofSeconds(5));
+            assertEquals(Rcode.NOERROR, tcp.send(newQuery("www.server.test.", Type.A)).getRcode());
+            assertEquals(Rcode.NOERROR, client(server).send(newQuery("www.server.test.", Type.A)).getRcode());
+        }
+    }
+
+    private static Message newResponse(Message query) {
+        Message response = new Message(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        return response;
+    }
+}
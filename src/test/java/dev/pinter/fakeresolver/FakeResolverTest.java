@@ -19,17 +19,24 @@ package dev.pinter.fakeresolver;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xbill.DNS.AAAARecord;
 import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
 import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNAMERecord;
 import org.xbill.DNS.Lookup;
 import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Message;
 import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
+import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
@@ -37,15 +44,35 @@ import org.xbill.DNS.Type;
 import org.xbill.DNS.lookup.LookupSession;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -297,6 +324,451 @@ public class FakeResolverTest {
         assertEquals(0, fakeResolver.getRecords().size());
     }
 
+    @Test
+    public void shouldResolveIgnoringCase() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("MiXeD.case."), DClass.IN, 60L, "a"));
+        Message response = fakeResolver.send(newQuery("mixed.CASE.", Type.TXT));
+        assertEquals(1, response.getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldReindexOnSetRecords() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        fakeResolver.setRecords(Arrays.asList(new Record[]{
+                        new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "b"),
+                        new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "c")
+                })
+        );
+        Message response = fakeResolver.send(newQuery("a.", Type.TXT));
+        assertEquals(2, response.getSection(Section.ANSWER).size());
+        assertTrue(response.getSection(Section.ANSWER).stream()
+                .noneMatch(r -> ((TXTRecord) r).getStrings().contains("a")));
+    }
+
+    @Test
+    public void shouldRouteByOwnerName() throws IOException {
+        FakeResolver external = new FakeResolver();
+        external.addRecord(new TXTRecord(Name.fromString("random.zone.test."), DClass.IN, 60L, "external"));
+        external.addRecord(new TXTRecord(Name.fromString("other.test."), DClass.IN, 60L, "external"));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.addRecord(new ARecord(Name.fromString("zone.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+
+        assertTrue(fakeResolver.send(newQuery("random.zone.test.", Type.TXT)).getSection(Section.ANSWER).isEmpty());
+        assertTrue(fakeResolver.send(newQuery("RANDOM.Zone.test.", Type.TXT)).getSection(Section.ANSWER).isEmpty());
+        assertEquals(1, fakeResolver.send(newQuery("other.test.", Type.TXT)).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldReturnReadOnlyList() throws UnknownHostException, TextParseException {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.setRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        assertThrowsExactly(UnsupportedOperationException.class, () -> fakeResolver.getRecords().clear());
+    }
+
+    @Test
+    public void shouldResolveWhileAddingRecords() throws Exception {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        int writes = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < writes; i++) {
+                    fakeResolver.addRecord(new TXTRecord(Name.fromString("w" + i + ".a."), DClass.IN, 60L, "w"));
+                }
+                return null;
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        assertEquals(1, fakeResolver.send(newQuery("a.", Type.TXT)).getSection(Section.ANSWER).size());
+                    }
+                    return null;
+                }));
+            }
+            writer.get();
+            for (Future<?> f : readers) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(writes + 1, fakeResolver.getRecords().size());
+    }
+
+    @Test
+    public void shouldUseExecutor() throws Exception {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        AtomicInteger tasks = new AtomicInteger();
+        Executor executor = r -> {
+            tasks.incrementAndGet();
+            r.run();
+        };
+        Message response = fakeResolver.sendAsync(newQuery("a.", Type.TXT), executor).toCompletableFuture().get();
+        assertEquals(1, response.getSection(Section.ANSWER).size());
+        assertTrue(tasks.get() > 0);
+    }
+
+    @Test
+    public void shouldResolveOnVirtualThreads() throws Exception {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        fakeResolver.setVirtualThreads(true);
+        assertTrue(fakeResolver.isVirtualThreads());
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(fakeResolver.sendAsync(newQuery("a.", Type.TXT)).toCompletableFuture());
+        }
+        for (CompletableFuture<Message> f : futures) {
+            assertEquals(1, f.get().getSection(Section.ANSWER).size());
+        }
+    }
+
+    @Test
+    public void shouldReuseAnswerTemplates() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.setAnswerTemplates(true);
+        assertTrue(fakeResolver.isAnswerTemplates());
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "a"));
+        for (int i = 0; i < 3; i++) {
+            Message query = newQuery("A.", Type.TXT);
+            Message response = fakeResolver.send(query);
+            assertEquals(query.getHeader().getID(), response.getHeader().getID());
+            assertEquals(query.getQuestion(), response.getQuestion());
+            assertEquals(1, response.getSection(Section.ANSWER).size());
+        }
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a."), DClass.IN, 60L, "b"));
+        assertEquals(2, fakeResolver.send(newQuery("a.", Type.TXT)).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldStreamZoneFile() throws IOException {
+        String domain = "fakeresolver.zone";
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.fromZoneFile(domain, Path.of(DNSZONEFILE));
+
+        FakeResolver expected = new FakeResolver();
+        expected.fromZoneFile(domain, DNSZONEFILE);
+        assertEquals(expected.getRecords().size(), fakeResolver.getRecords().size());
+        assertEquals(3, fakeResolver.send(newQuery("shouldResolveNS.fakeresolver.zone.", Type.NS))
+                .getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldStreamGzipZone(@TempDir Path tempDir) throws IOException {
+        Path gzip = tempDir.resolve("zone.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            Files.copy(Path.of(DNSZONEFILE), out);
+        }
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.fromZoneStream("fakeresolver.zone", Files.newInputStream(gzip));
+        assertEquals(1, fakeResolver.send(newQuery("shouldResolveA.fakeresolver.zone.", Type.A))
+                .getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldLoadZonesInParallel() throws IOException {
+        Map<String, Path> zones = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            zones.put("zone" + i + ".test", Path.of(DNSZONEFILE));
+        }
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.fromZoneFiles(zones);
+
+        FakeResolver single = new FakeResolver();
+        single.fromZoneFile("zone0.test", Path.of(DNSZONEFILE));
+        assertEquals(8 * single.getRecords().size(), fakeResolver.getRecords().size());
+        for (String zone : zones.keySet()) {
+            assertEquals(1, fakeResolver.send(newQuery("shouldResolveA." + zone + ".", Type.A))
+                    .getSection(Section.ANSWER).size());
+        }
+    }
+
+    @Test
+    public void shouldNotPublishFailedZones(@TempDir Path tempDir) throws IOException {
+        Path invalid = Files.writeString(tempDir.resolve("invalid.zone"), "www IN A not-an-address\n");
+        Map<String, Path> zones = new LinkedHashMap<>();
+        zones.put("valid.test", Path.of(DNSZONEFILE));
+        zones.put("invalid.test", invalid);
+        FakeResolver fakeResolver = new FakeResolver();
+        assertThrows(IOException.class, () -> fakeResolver.fromZoneFiles(zones));
+        assertTrue(fakeResolver.getRecords().isEmpty());
+    }
+
+    @Test
+    public void shouldReloadSnapshot(@TempDir Path tempDir) throws IOException {
+        Path snapshot = tempDir.resolve("records.snapshot");
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.fromZoneFile("fakeresolver.zone", DNSZONEFILE);
+        fakeResolver.addRecords(FakeResolver.genNRandomTXTRecords("random.fakeresolver.zone.", 1000));
+        fakeResolver.exportSnapshot(snapshot);
+
+        FakeResolver reloaded = new FakeResolver();
+        reloaded.fromSnapshot(snapshot);
+        assertEquals(fakeResolver.getRecords(), reloaded.getRecords());
+        assertEquals(1000, reloaded.send(newQuery("random.fakeresolver.zone.", Type.TXT))
+                .getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldInvalidateStaleSnapshot(@TempDir Path tempDir) throws IOException {
+        Path zone = Files.copy(Path.of(DNSZONEFILE), tempDir.resolve("test.zone"));
+        Path snapshot = tempDir.resolve("test.snapshot");
+        FakeResolver first = new FakeResolver();
+        first.fromZoneFile("fakeresolver.zone", zone, snapshot);
+        assertTrue(Files.exists(snapshot));
+
+        FakeResolver cached = new FakeResolver();
+        cached.fromZoneFile("fakeresolver.zone", zone, snapshot);
+        assertEquals(first.getRecords(), cached.getRecords());
+
+        Files.writeString(zone, "\nadded IN A 192.0.2.1\n", StandardOpenOption.APPEND);
+        FakeResolver updated = new FakeResolver();
+        updated.fromZoneFile("fakeresolver.zone", zone, snapshot);
+        assertEquals(first.getRecords().size() + 1, updated.getRecords().size());
+        assertEquals(1, updated.send(newQuery("added.fakeresolver.zone.", Type.A)).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldRecordMetrics() throws Exception {
+        StubResolver external = StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext"));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        FakeResolverMetrics metrics = new FakeResolverMetrics();
+        fakeResolver.setMetrics(metrics);
+        fakeResolver.addRecord(new TXTRecord(Name.fromString("a.test."), DClass.IN, 60L, "a"));
+
+        fakeResolver.send(newQuery("a.test.", Type.TXT));
+        fakeResolver.sendAsync(newQuery("a.test.", Type.TXT)).toCompletableFuture().get();
+        fakeResolver.send(newQuery("a.test.", Type.MX));
+        fakeResolver.send(newQuery("missing.a.test.", Type.TXT));
+        fakeResolver.send(newQuery("ext.test.", Type.TXT));
+        fakeResolver.sendAsync(newQuery("ext.test.", Type.TXT), Runnable::run).toCompletableFuture().get();
+
+        FakeResolverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getInternalHits());
+        assertEquals(1, snapshot.getInternalNoData());
+        assertEquals(1, snapshot.getInternalNxDomain());
+        assertEquals(2, snapshot.getExternalFallbacks());
+        assertEquals(6, snapshot.getQueries());
+        assertEquals(5L, snapshot.getQueriesByType().get("TXT"));
+        assertEquals(1L, snapshot.getQueriesByType().get("MX"));
+        assertEquals(4, snapshot.getLocalLatency().getCount());
+        assertEquals(2, snapshot.getExternalLatency().getCount());
+    }
+
+    @Test
+    public void shouldFollowCNAMEChain() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecords(Arrays.asList(
+                new CNAMERecord(Name.fromString("a.test."), DClass.IN, 60L, Name.fromString("b.test.")),
+                new CNAMERecord(Name.fromString("b.test."), DClass.IN, 60L, Name.fromString("c.test.")),
+                new AAAARecord(Name.fromString("c.test."), DClass.IN, 60L, InetAddress.getByName("2001:db8::1"))
+        ));
+        List<Record> answer = fakeResolver.send(newQuery("a.test.", Type.AAAA)).getSection(Section.ANSWER);
+        assertEquals(3, answer.size());
+        assertEquals(Type.CNAME, answer.get(0).getType());
+        assertEquals(Type.CNAME, answer.get(1).getType());
+        assertEquals(Type.AAAA, answer.get(2).getType());
+        assertEquals(1, fakeResolver.send(newQuery("a.test.", Type.CNAME)).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldStopOnCNAMELoop() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecords(Arrays.asList(
+                new CNAMERecord(Name.fromString("a.test."), DClass.IN, 60L, Name.fromString("b.test.")),
+                new CNAMERecord(Name.fromString("b.test."), DClass.IN, 60L, Name.fromString("a.test."))
+        ));
+        assertEquals(2, fakeResolver.send(newQuery("a.test.", Type.A)).getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldSynthesizeCNAMEFromDNAME() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecords(Arrays.asList(
+                new DNAMERecord(Name.fromString("old.test."), DClass.IN, 60L, Name.fromString("new.test.")),
+                new ARecord(Name.fromString("www.new.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.1"))
+        ));
+        List<Record> answer = fakeResolver.send(newQuery("www.old.test.", Type.A)).getSection(Section.ANSWER);
+        assertEquals(3, answer.size());
+        assertEquals(Type.DNAME, answer.get(0).getType());
+        assertEquals(Name.fromString("www.new.test."), ((CNAMERecord) answer.get(1)).getTarget());
+        assertEquals(Type.A, answer.get(2).getType());
+    }
+
+    @Test
+    public void shouldAddGlueToAdditionalSection() throws IOException {
+        String domain = "fakeresolver.zone";
+        FakeResolver fakeResolver = new FakeResolver();
+        fakeResolver.fromZoneFile(domain, DNSZONEFILE);
+
+        Message response = fakeResolver.send(newQuery("shouldResolveNS.fakeresolver.zone.", Type.NS));
+        assertEquals(3, response.getSection(Section.ANSWER).size());
+        assertEquals(3, response.getSection(Section.ADDITIONAL).size());
+        response.getSection(Section.ADDITIONAL).forEach(r -> assertEquals(Type.A, r.getType()));
+    }
+
+    @Test
+    public void shouldReturnNXDOMAINWithSOA() throws IOException {
+        String domain = "fakeresolver.zone";
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.fromZoneFile(domain, DNSZONEFILE);
+
+        Message response = fakeResolver.send(newQuery("missing.fakeresolver.zone.", Type.A));
+        assertEquals(Rcode.NXDOMAIN, response.getRcode());
+        assertTrue(response.getSection(Section.ANSWER).isEmpty());
+        List<Record> authority = response.getSection(Section.AUTHORITY);
+        assertEquals(1, authority.size());
+        assertEquals(Type.SOA, authority.get(0).getType());
+        assertEquals(Name.fromString("fakeresolver.zone."), authority.get(0).getName());
+    }
+
+    @Test
+    public void shouldReturnNODATAWithSOA() throws IOException {
+        String domain = "fakeresolver.zone";
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.fromZoneFile(domain, DNSZONEFILE);
+
+        Message response = fakeResolver.send(newQuery("shouldResolveA.fakeresolver.zone.", Type.AAAA));
+        assertEquals(Rcode.NOERROR, response.getRcode());
+        assertTrue(response.getSection(Section.ANSWER).isEmpty());
+        assertEquals(Type.SOA, response.getSection(Section.AUTHORITY).get(0).getType());
+
+        fakeResolver.addRecord(new ARecord(Name.fromString("a.b.fakeresolver.zone."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+        Message nonTerminal = fakeResolver.send(newQuery("b.fakeresolver.zone.", Type.A));
+        assertEquals(Rcode.NOERROR, nonTerminal.getRcode());
+        assertEquals(1, nonTerminal.getSection(Section.AUTHORITY).size());
+    }
+
+    @Test
+    public void shouldExpandWildcard() throws IOException {
+        StubResolver external = StubResolver.answering();
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.setAnswerTemplates(true);
+        fakeResolver.addRecords(Arrays.asList(
+                new TXTRecord(Name.fromString("*.wild.test."), DClass.IN, 60L, "wildcard"),
+                new TXTRecord(Name.fromString("exact.wild.test."), DClass.IN, 60L, "exact"),
+                new CNAMERecord(Name.fromString("*.alias.test."), DClass.IN, 60L, Name.fromString("exact.wild.test."))
+        ));
+
+        List<Record> answer = fakeResolver.send(newQuery("a.b.wild.test.", Type.TXT)).getSection(Section.ANSWER);
+        assertEquals(1, answer.size());
+        assertEquals(Name.fromString("a.b.wild.test."), answer.get(0).getName());
+        assertEquals("wildcard", ((TXTRecord) answer.get(0)).getStrings().get(0));
+
+        answer = fakeResolver.send(newQuery("exact.wild.test.", Type.TXT)).getSection(Section.ANSWER);
+        assertEquals("exact", ((TXTRecord) answer.get(0)).getStrings().get(0));
+
+        answer = fakeResolver.send(newQuery("x.alias.test.", Type.TXT)).getSection(Section.ANSWER);
+        assertEquals(2, answer.size());
+        assertEquals(Name.fromString("x.alias.test."), answer.get(0).getName());
+        assertEquals("exact", ((TXTRecord) answer.get(1)).getStrings().get(0));
+
+        assertEquals(Rcode.NOERROR, fakeResolver.send(newQuery("c.wild.test.", Type.A)).getRcode());
+        assertEquals(Rcode.NXDOMAIN, fakeResolver.send(newQuery("a.exact.wild.test.", Type.TXT)).getRcode());
+        assertEquals(0, external.getQueries());
+    }
+
+    @Test
+    public void shouldResolveBatchInOrder() throws Exception {
+        StubResolver external = StubResolver.answering(
+                new ARecord(Name.fromString("ext.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.2")));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.addRecord(new ARecord(Name.fromString("int.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+
+        List<Message> queries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            queries.add(newQuery(i % 2 == 0 ? "int.test." : "ext.test.", Type.A));
+        }
+        List<Message> responses = fakeResolver.resolveAll(queries).toCompletableFuture().get();
+        assertEquals(queries.size(), responses.size());
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(queries.get(i).getHeader().getID(), responses.get(i).getHeader().getID());
+            assertEquals(i % 2 == 0 ? "192.0.2.1" : "192.0.2.2",
+                    ((ARecord) responses.get(i).getSection(Section.ANSWER).get(0)).getAddress().getHostAddress());
+        }
+        assertEquals(500, external.getQueries());
+    }
+
+    @Test
+    public void shouldCapBatchConcurrency() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        StubResolver external = new StubResolver(query -> {
+            Message response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            return response;
+        }) {
+            @Override
+            public CompletionStage<Message> sendAsync(Message query) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                CompletableFuture<Message> response = new CompletableFuture<>();
+                scheduler.schedule(() -> {
+                    inFlight.decrementAndGet();
+                    response.complete(super.sendAsync(query).toCompletableFuture().join());
+                }, 1, TimeUnit.MILLISECONDS);
+                return response;
+            }
+        };
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.setBatchConcurrency(4);
+        List<Message> queries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            queries.add(newQuery("ext" + i + ".test.", Type.A));
+        }
+        try {
+            assertEquals(50, fakeResolver.resolveAll(queries).toCompletableFuture().get().size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertEquals(50, external.getQueries());
+        assertTrue(maxInFlight.get() <= 4);
+        assertThrows(IllegalArgumentException.class, () -> fakeResolver.setBatchConcurrency(0));
+    }
+
+    @Test
+    public void shouldRouteToZones(@TempDir Path tempDir) throws IOException {
+        StubResolver external = StubResolver.answering();
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.addRecord(new ARecord(Name.fromString("shared.tenant1.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.100")));
+        fakeResolver.loadZone("tenant1.test", Path.of(DNSZONEFILE));
+        fakeResolver.loadZone("sub.tenant1.test", Arrays.asList(
+                new ARecord(Name.fromString("www.sub.tenant1.test."), DClass.IN, 60L,
+                        InetAddress.getByName("192.0.2.1"))));
+        assertEquals(2, fakeResolver.getZones().size());
+
+        assertEquals(1, fakeResolver.send(newQuery("shouldResolveA.tenant1.test.", Type.A))
+                .getSection(Section.ANSWER).size());
+        assertEquals(Rcode.NXDOMAIN, fakeResolver.send(newQuery("shared.tenant1.test.", Type.A)).getRcode());
+        assertEquals(1, fakeResolver.send(newQuery("www.sub.tenant1.test.", Type.A))
+                .getSection(Section.ANSWER).size());
+        // the zone has no record at its apex, yet is authoritative for the names below it
+        assertEquals(Rcode.NXDOMAIN, fakeResolver.send(newQuery("missing.sub.tenant1.test.", Type.A)).getRcode());
+        assertEquals(0, external.getQueries());
+
+        Path replacement = tempDir.resolve("tenant1.zone");
+        Files.writeString(replacement, "$TTL 30\n@ IN SOA ns1 hostmaster 2 30 30 30 30\nnew IN A 192.0.2.2\n");
+        fakeResolver.loadZone("tenant1.test", replacement);
+        assertEquals(2, fakeResolver.getZoneRecords("tenant1.test").size());
+        assertEquals(Rcode.NXDOMAIN, fakeResolver.send(newQuery("shouldResolveA.tenant1.test.", Type.A)).getRcode());
+        assertEquals(1, fakeResolver.send(newQuery("new.tenant1.test.", Type.A)).getSection(Section.ANSWER).size());
+
+        assertTrue(fakeResolver.dropZone("tenant1.test"));
+        assertFalse(fakeResolver.dropZone("tenant1.test"));
+        assertEquals(1, fakeResolver.send(newQuery("shared.tenant1.test.", Type.A)).getSection(Section.ANSWER).size());
+        assertEquals(1, fakeResolver.getRecords().size());
+    }
+
     private void recordsMatch(Name name, int type) throws UnknownHostException {
         FakeResolver fakeResolver = new FakeResolver();
         SimpleResolver simpleResolver = new SimpleResolver();
@@ -0,0 +1,149 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FaultInjectorTest {
+    private FakeResolver fakeResolver;
+    private FaultInjector faults;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecord(new ARecord(Name.fromString("www.faults.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+        faults = new FaultInjector();
+        fakeResolver.setFaultInjector(faults);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        faults.close();
+    }
+
+    @Test
+    public void shouldAnswerWithoutMatchingRule() throws IOException {
+        faults.addRule(FaultRule.forType(Type.MX).withServfailRate(1));
+        Message response = fakeResolver.send(newQuery("www.faults.test.", Type.A));
+        assertEquals(Rcode.NOERROR, response.getRcode());
+        assertEquals(1, response.getSection(Section.ANSWER).size());
+    }
+
+    @Test
+    public void shouldInjectErrors() throws IOException {
+        faults.addRule(FaultRule.forName(Name.fromString("servfail.faults.test.")).withServfailRate(1))
+                .addRule(FaultRule.forName(Name.fromString("refused.faults.test.")).withRefusedRate(1))
+                .addRule(FaultRule.forName(Name.fromString("faults.test."), Type.A).withTruncateRate(1));
+
+        assertEquals(Rcode.SERVFAIL, fakeResolver.send(newQuery("a.servfail.faults.test.", Type.A)).getRcode());
+        assertEquals(Rcode.REFUSED, fakeResolver.send(newQuery("refused.faults.test.", Type.TXT)).getRcode());
+        Message truncated = fakeResolver.send(newQuery("www.faults.test.", Type.A));
+        assertTrue(truncated.getHeader().getFlag(Flags.TC));
+        assertTrue(truncated.getSection(Section.ANSWER).isEmpty());
+        assertFalse(fakeResolver.send(newQuery("www.faults.test.", Type.AAAA)).getHeader().getFlag(Flags.TC));
+    }
+
+    @Test
+    public void shouldShareQueriesBetweenFailureRates() throws IOException {
+        faults.addRule(FaultRule.forAll().withServfailRate(0.3).withRefusedRate(0.7));
+        int servfail = 0;
+        for (int i = 0; i < 10_000; i++) {
+            int rcode = fakeResolver.send(newQuery("www.faults.test.", Type.A)).getRcode();
+            if (rcode == Rcode.SERVFAIL) {
+                servfail++;
+            } else {
+                assertEquals(Rcode.REFUSED, rcode);
+            }
+        }
+        assertTrue(servfail > 2500 && servfail < 3500);
+
+        FaultRule rule = FaultRule.forAll().withTimeoutRate(0.5).withServfailRate(0.4);
+        assertThrows(IllegalArgumentException.class, () -> rule.withRefusedRate(0.2));
+        assertThrows(IllegalArgumentException.class, () -> rule.withTimeoutRate(0.7));
+        assertEquals(0.6, rule.withTimeoutRate(0.6).getTimeoutRate());
+    }
+
+    @Test
+    public void shouldTimeOut() throws Exception {
+        faults.setTimeout(Duration.ofMillis(50));
+        faults.addRule(FaultRule.forAll().withTimeoutRate(1));
+        assertThrows(SocketTimeoutException.class, () -> fakeResolver.send(newQuery("www.faults.test.", Type.A)));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> fakeResolver.sendAsync(newQuery("www.faults.test.", Type.A)).toCompletableFuture().get());
+        assertInstanceOf(SocketTimeoutException.class, e.getCause());
+    }
+
+    @Test
+    public void shouldDelayWithoutBlocking() throws Exception {
+        faults.addRule(FaultRule.forAll().withLatency(LatencyDistribution.fixed(Duration.ofMillis(500))));
+        long start = System.nanoTime();
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            responses.add(fakeResolver.sendAsync(newQuery("www.faults.test.", Type.A)).toCompletableFuture());
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 500);
+        for (CompletableFuture<Message> r : responses) {
+            assertEquals(1, r.get().getSection(Section.ANSWER).size());
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 500);
+    }
+
+    @Test
+    public void shouldDrawLatencies() {
+        Random random = new Random(1);
+        LatencyDistribution uniform = LatencyDistribution.uniform(Duration.ofMillis(10), Duration.ofMillis(20));
+        LatencyDistribution logNormal = LatencyDistribution.logNormal(Duration.ofMillis(10), 0.5);
+        int belowMedian = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long u = uniform.nextNanos(random);
+            assertTrue(u >= Duration.ofMillis(10).toNanos() && u <= Duration.ofMillis(20).toNanos());
+            if (logNormal.nextNanos(random) < Duration.ofMillis(10).toNanos()) {
+                belowMedian++;
+            }
+        }
+        assertTrue(belowMedian > 4500 && belowMedian < 5500);
+        assertThrows(IllegalArgumentException.class, () -> FaultRule.forAll().withServfailRate(1.5));
+    }
+}
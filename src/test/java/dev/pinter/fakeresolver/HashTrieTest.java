@@ -0,0 +1,111 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class HashTrieTest {
+    @Test
+    public void shouldMatchHashMap() {
+        SplittableRandom random = new SplittableRandom(3);
+        Map<Key, Integer> expected = new HashMap<>();
+        HashTrie<Key, Integer> trie = HashTrie.empty();
+        for (int round = 0; round < 50; round++) {
+            HashTrie<Key, Integer> before = trie;
+            Map<Key, Integer> beforeExpected = new HashMap<>(expected);
+            HashTrie.Builder<Key, Integer> builder = trie.toBuilder();
+            for (int i = 0; i < 500; i++) {
+                Key key = Key.of(random.nextInt(2000));
+                if (random.nextInt(3) == 0) {
+                    builder.remove(key);
+                    expected.remove(key);
+                } else {
+                    builder.put(key, i);
+                    expected.put(key, i);
+                }
+            }
+            trie = builder.build();
+            assertContents(expected, trie);
+            assertContents(beforeExpected, before);
+        }
+    }
+
+    @Test
+    public void shouldNotChangeBuiltMap() {
+        HashTrie.Builder<Key, Integer> builder = HashTrie.<Key, Integer>empty().toBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.put(Key.of(i), i);
+        }
+        HashTrie<Key, Integer> first = builder.build();
+        for (int i = 0; i < 100; i += 2) {
+            builder.remove(Key.of(i));
+            builder.put(Key.of(i + 1), -1);
+        }
+        HashTrie<Key, Integer> second = builder.build();
+        assertEquals(100, first.size());
+        assertEquals(50, second.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, first.get(Key.of(i)));
+        }
+        assertNull(second.get(Key.of(0)));
+        assertEquals(-1, second.get(Key.of(1)));
+    }
+
+    private static void assertContents(Map<Key, Integer> expected, HashTrie<Key, Integer> trie) {
+        assertEquals(expected.size(), trie.size());
+        for (Map.Entry<Key, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), trie.get(e.getKey()));
+        }
+        Map<Key, Integer> actual = new HashMap<>();
+        trie.forEach(actual::put);
+        assertEquals(expected, actual);
+    }
+
+    private static final class Key {
+        private final int id;
+        private final int hash;
+
+        private Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        /**
+         * A third of the keys share 4 hash values, so keys collide at every level of the trie.
+         */
+        static Key of(int id) {
+            return new Key(id, id % 3 == 0 ? id % 4 : id * 0x9E3779B9);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void shouldReportPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax(TimeUnit.NANOSECONDS));
+        assertWithin(500_000, histogram.getValueAtPercentile(50, TimeUnit.NANOSECONDS));
+        assertWithin(990_000, histogram.getValueAtPercentile(99, TimeUnit.NANOSECONDS));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS));
+        assertEquals(500.5, histogram.getMean(TimeUnit.MICROSECONDS), 0.001);
+    }
+
+    @Test
+    public void shouldKeepBucketsOrdered() {
+        int previous = -1;
+        for (long v = 0; v < 1 << 20; v += 7) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(index >= previous);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= v);
+            previous = index;
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void shouldNotChangeCopy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram copy = histogram.copy();
+        histogram.record(20);
+        assertEquals(1, copy.getCount());
+        assertEquals(2, histogram.getCount());
+    }
+
+    @Test
+    public void shouldRejectInvalidPercentile() {
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LatencyHistogram().getValueAtPercentile(101, TimeUnit.NANOSECONDS));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.032, "expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueryLogTest {
+    @TempDir
+    Path tempDir;
+
+    private FakeResolver fakeResolver;
+    private Path logFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecord(new ARecord(Name.fromString("www.log.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.1")));
+        logFile = tempDir.resolve("queries.log");
+    }
+
+    @Test
+    public void shouldLogQuestions() throws IOException {
+        Instant before = Instant.now().minusSeconds(1);
+        try (QueryLog log = new QueryLog(logFile)) {
+            fakeResolver.setQueryLog(log);
+            fakeResolver.send(newQuery("www.log.test.", Type.A));
+            fakeResolver.send(newQuery("external.example.", Type.MX));
+        }
+        List<QueryLog.Entry> entries = new ArrayList<>();
+        assertEquals(2, QueryLog.read(logFile, entries::add));
+
+        QueryLog.Entry internal = entries.get(0);
+        assertEquals(Name.fromString("www.log.test."), internal.getName());
+        assertEquals(Type.A, internal.getType());
+        assertEquals(DClass.IN, internal.getDClass());
+        assertTrue(internal.isInternal());
+        assertTrue(internal.getTimestamp().isAfter(before));
+
+        QueryLog.Entry external = entries.get(1);
+        assertEquals(Name.fromString("external.example."), external.getName());
+        assertEquals(Type.MX, external.getType());
+        assertFalse(external.isInternal());
+        assertTrue(external.getOffsetNanos() >= internal.getOffsetNanos());
+    }
+
+    @Test
+    public void shouldLogQueriesFailedByFaultInjector() throws IOException {
+        try (QueryLog log = new QueryLog(logFile); FaultInjector faults = new FaultInjector()) {
+            fakeResolver.setQueryLog(log);
+            fakeResolver.setFaultInjector(faults.addRule(FaultRule.forAll().withServfailRate(1)));
+            assertEquals(Rcode.SERVFAIL, fakeResolver.send(newQuery("www.log.test.", Type.A)).getRcode());
+            fakeResolver.sendAsync(newQuery("external.example.", Type.A)).toCompletableFuture().join();
+        }
+        List<QueryLog.Entry> entries = new ArrayList<>();
+        assertEquals(2, QueryLog.read(logFile, entries::add));
+        assertTrue(entries.get(0).isInternal());
+        assertFalse(entries.get(1).isInternal());
+    }
+
+    @Test
+    public void shouldLogConcurrentQueries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        QueryLog log = new QueryLog(logFile, 1024);
+        try {
+            fakeResolver.setQueryLog(log);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(executor.submit(() -> {
+                    Message query = newQuery("www.log.test.", Type.A);
+                    for (int i = 0; i < 10_000; i++) {
+                        fakeResolver.send(query);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : tasks) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            log.close();
+        }
+        assertEquals(80_000, log.getWritten() + log.getDropped());
+        assertEquals(log.getWritten(), QueryLog.read(logFile, e -> assertTrue(e.isInternal())));
+    }
+
+    @Test
+    public void shouldReplayAtMaxRate() throws IOException {
+        try (QueryLog log = new QueryLog(logFile)) {
+            fakeResolver.setQueryLog(log);
+            for (int i = 0; i < 1000; i++) {
+                fakeResolver.send(newQuery(i % 2 == 0 ? "www.log.test." : "other.example.", Type.A));
+            }
+        }
+        fakeResolver.setQueryLog(null);
+        FakeResolverMetrics metrics = new FakeResolverMetrics();
+        fakeResolver.setMetrics(metrics);
+
+        QueryReplay.Report report = QueryReplay.to(fakeResolver).withThreads(4).withMaxRate().withAsync(true)
+                .run(logFile);
+        assertEquals(1000, report.getQueries());
+        assertEquals(0, report.getErrors());
+        assertEquals(1000, report.getLatencies().getCount());
+        assertTrue(report.getThroughput() > 0);
+        assertEquals(500, metrics.snapshot().getInternalHits());
+        assertEquals(500, metrics.snapshot().getExternalFallbacks());
+    }
+
+    @Test
+    public void shouldReplayAtRecordedPace() throws Exception {
+        try (QueryLog log = new QueryLog(logFile)) {
+            fakeResolver.setQueryLog(log);
+            fakeResolver.send(newQuery("www.log.test.", Type.A));
+            Thread.sleep(200);
+            fakeResolver.send(newQuery("www.log.test.", Type.A));
+        }
+        QueryReplay replay = QueryReplay.to(fakeResolver).withThreads(2);
+        QueryReplay.Report original = replay.run(logFile);
+        assertEquals(2, original.getQueries());
+        assertTrue(original.getElapsed().compareTo(Duration.ofMillis(200)) >= 0, "elapsed " + original.getElapsed());
+        QueryReplay.Report faster = replay.withSpeed(10).run(logFile);
+        assertTrue(faster.getElapsed().compareTo(Duration.ofMillis(150)) < 0, "elapsed " + faster.getElapsed());
+    }
+
+    @Test
+    public void shouldCountResolverExceptionsAsErrors() throws IOException {
+        try (QueryLog log = new QueryLog(logFile)) {
+            fakeResolver.setQueryLog(log);
+            for (int i = 0; i < 100; i++) {
+                fakeResolver.send(newQuery("www.log.test.", Type.A));
+            }
+        }
+        StubResolver failing = new StubResolver(query -> {
+            throw new IllegalStateException("broken resolver");
+        });
+        for (boolean async : new boolean[]{false, true}) {
+            QueryReplay replay = QueryReplay.to(failing).withThreads(2).withMaxRate().withAsync(async);
+            QueryReplay.Report report = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> replay.run(logFile));
+            assertEquals(100, report.getQueries());
+            assertEquals(100, report.getErrors());
+        }
+    }
+}
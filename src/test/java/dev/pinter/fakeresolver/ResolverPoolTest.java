@@ -0,0 +1,185 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResolverPoolTest {
+    private Record record;
+    private Message query;
+    private final List<FaultInjector> injectors = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        record = new ARecord(Name.fromString("www.pool.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.1"));
+        query = Message.newQuery(Record.newRecord(record.getName(), Type.A, DClass.IN));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        injectors.forEach(FaultInjector::close);
+    }
+
+    /**
+     * Creates an upstream answering through a fault injector.
+     */
+    private FakeResolver upstream(StubResolver stub, FaultRule rule) {
+        FaultInjector faults = new FaultInjector();
+        faults.setTimeout(Duration.ofMillis(20));
+        faults.addRule(rule);
+        injectors.add(faults);
+        FakeResolver upstream = new FakeResolver(stub);
+        upstream.setFaultInjector(faults);
+        return upstream;
+    }
+
+    @Test
+    public void shouldRotateUpstreams() throws IOException {
+        StubResolver[] stubs = {StubResolver.answering(record), StubResolver.answering(record),
+                StubResolver.answering(record)};
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.ROUND_ROBIN, stubs)) {
+            for (int i = 0; i < 30; i++) {
+                assertEquals(Rcode.NOERROR, pool.send(query).getRcode());
+            }
+        }
+        for (StubResolver stub : stubs) {
+            assertEquals(10, stub.getQueries());
+        }
+    }
+
+    @Test
+    public void shouldPreferFastestUpstream() throws IOException {
+        StubResolver slow = StubResolver.answering(record);
+        StubResolver fast = StubResolver.answering(record);
+        FakeResolver delayed = upstream(slow, FaultRule.forAll().withLatency(
+                LatencyDistribution.fixed(Duration.ofMillis(20))));
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.LOWEST_LATENCY, delayed, fast)) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(Rcode.NOERROR, pool.send(query).getRcode());
+            }
+        }
+        assertEquals(1, slow.getQueries());
+        assertEquals(19, fast.getQueries());
+    }
+
+    @Test
+    public void shouldHedgeSlowQueries() throws IOException {
+        StubResolver slow = StubResolver.answering(record);
+        StubResolver fast = StubResolver.answering(record);
+        FakeResolver delayed = upstream(slow, FaultRule.forAll().withLatency(
+                LatencyDistribution.fixed(Duration.ofMillis(500))));
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.HEDGED, delayed, fast)) {
+            pool.setHedgeDelay(Duration.ofMillis(10));
+            long start = System.nanoTime();
+            assertEquals(Rcode.NOERROR, pool.send(query).getRcode());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 400);
+            assertEquals(1, fast.getQueries());
+            assertEquals(1, pool.getLatencies().getCount());
+        }
+    }
+
+    @Test
+    public void shouldEjectFailingUpstream() throws Exception {
+        StubResolver broken = StubResolver.answering(record);
+        StubResolver healthy = StubResolver.answering(record);
+        FakeResolver failing = upstream(broken, FaultRule.forAll().withTimeoutRate(1));
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.ROUND_ROBIN, failing, healthy)) {
+            pool.setFailureThreshold(2);
+            pool.setEjectionTime(Duration.ofMillis(200));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Rcode.NOERROR, pool.send(query).getRcode());
+            }
+            assertEquals(10, healthy.getQueries());
+            assertFalse(pool.isAvailable(failing));
+            assertTrue(pool.isAvailable(healthy));
+
+            failing.getFaultInjector().clearRules();
+            Thread.sleep(250);
+            for (int i = 0; i < 4; i++) {
+                pool.send(query);
+            }
+            assertTrue(pool.isAvailable(failing));
+            assertTrue(broken.getQueries() > 0);
+        }
+    }
+
+    @Test
+    public void shouldIgnoreLateFailuresAfterEjection() throws Exception {
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        StubResolver held = new StubResolver(q -> null) {
+            @Override
+            public CompletionStage<Message> sendAsync(Message query) {
+                CompletableFuture<Message> response = new CompletableFuture<>();
+                responses.add(response);
+                return response;
+            }
+        };
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.ROUND_ROBIN, held)) {
+            pool.setFailureThreshold(1);
+            pool.setEjectionTime(Duration.ofMillis(50));
+            for (int i = 0; i < 3; i++) {
+                pool.sendAsync(query);
+            }
+            responses.get(0).completeExceptionally(new SocketTimeoutException());
+            assertFalse(pool.isAvailable(held));
+
+            Thread.sleep(60);
+            pool.sendAsync(query);
+            assertEquals(4, responses.size());
+            // sent before the ejection, must not cancel the probe in flight
+            responses.get(1).completeExceptionally(new SocketTimeoutException());
+            responses.get(3).complete(query);
+            assertTrue(pool.isAvailable(held));
+
+            // sent before the ejection, must not eject the upstream again
+            responses.get(2).completeExceptionally(new SocketTimeoutException());
+            assertTrue(pool.isAvailable(held));
+        }
+    }
+
+    @Test
+    public void shouldFailWhenEveryUpstreamFails() {
+        FakeResolver failing = upstream(StubResolver.answering(record), FaultRule.forAll().withTimeoutRate(1));
+        try (ResolverPool pool = new ResolverPool(ResolverPool.Policy.HEDGED, failing)) {
+            assertThrows(SocketTimeoutException.class, () -> pool.send(query));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ResolverPool(ResolverPool.Policy.HEDGED));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ResponseCacheTest {
+    @Test
+    public void shouldCacheExternalResponse() throws IOException {
+        StubResolver external = StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext"));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        ResponseCache cache = new ResponseCache(10);
+        fakeResolver.setResponseCache(cache);
+
+        Message first = newQuery("ext.test.", Type.TXT);
+        Message second = newQuery("ext.test.", Type.TXT);
+        assertEquals(1, fakeResolver.send(first).getSection(Section.ANSWER).size());
+        Message response = fakeResolver.send(second);
+        assertEquals(1, response.getSection(Section.ANSWER).size());
+        assertEquals(second.getHeader().getID(), response.getHeader().getID());
+        assertEquals(1, external.getQueries());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldExpireAfterTTL() throws IOException {
+        MutableClock clock = new MutableClock();
+        StubResolver external = StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext"));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.setResponseCache(new ResponseCache(10, clock));
+
+        fakeResolver.send(newQuery("ext.test.", Type.TXT));
+        clock.advance(Duration.ofSeconds(59));
+        fakeResolver.send(newQuery("ext.test.", Type.TXT));
+        assertEquals(1, external.getQueries());
+        clock.advance(Duration.ofSeconds(1));
+        fakeResolver.send(newQuery("ext.test.", Type.TXT));
+        assertEquals(2, external.getQueries());
+    }
+
+    @Test
+    public void shouldLowerTtlOfCachedResponse() throws IOException {
+        MutableClock clock = new MutableClock();
+        StubResolver external = StubResolver.answering(
+                new TXTRecord(Name.fromString("ext.test."), DClass.IN, 60L, "ext"));
+        FakeResolver fakeResolver = new FakeResolver(external);
+        fakeResolver.setResponseCache(new ResponseCache(10, clock));
+
+        assertEquals(60, fakeResolver.send(newQuery("ext.test.", Type.TXT)).getSection(Section.ANSWER).get(0).getTTL());
+        clock.advance(Duration.ofMillis(20_500));
+        Message response = fakeResolver.send(newQuery("ext.test.", Type.TXT));
+        TXTRecord answer = (TXTRecord) response.getSection(Section.ANSWER).get(0);
+        assertEquals(40, answer.getTTL());
+        assertEquals("ext", answer.getStrings().get(0));
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(10, fakeResolver.send(newQuery("ext.test.", Type.TXT)).getSection(Section.ANSWER).get(0).getTTL());
+        assertEquals(1, external.getQueries());
+    }
+
+    @Test
+    public void shouldCacheNegativeResponseWithSOAMinimum() throws TextParseException {
+        MutableClock clock = new MutableClock();
+        ResponseCache cache = new ResponseCache(10, clock);
+        Message query = newQuery("missing.test.", Type.A);
+        Message response = new Message(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        response.getHeader().setRcode(Rcode.NXDOMAIN);
+        response.addRecord(new SOARecord(Name.fromString("test."), DClass.IN, 300L, Name.fromString("ns.test."),
+                Name.fromString("hostmaster.test."), 1, 30, 30, 30, 10), Section.AUTHORITY);
+        cache.put(query, response);
+
+        assertNotNull(cache.get(query));
+        clock.advance(Duration.ofSeconds(10));
+        assertNull(cache.get(query));
+    }
+
+    @Test
+    public void shouldNotCacheServerFailure() throws TextParseException {
+        ResponseCache cache = new ResponseCache(10);
+        Message query = newQuery("fail.test.", Type.A);
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setRcode(Rcode.SERVFAIL);
+        cache.put(query, response);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws TextParseException {
+        ResponseCache cache = new ResponseCache(2);
+        Message a = newQuery("a.test.", Type.TXT);
+        Message b = newQuery("b.test.", Type.TXT);
+        Message c = newQuery("c.test.", Type.TXT);
+        cache.put(a, answer(a));
+        cache.put(b, answer(b));
+        assertNotNull(cache.get(a));
+        cache.put(c, answer(c));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+
+    @Test
+    public void shouldCoalesceInFlightRequests() throws Exception {
+        ResponseCache cache = new ResponseCache(10);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CompletableFuture<Message> upstream = new CompletableFuture<>();
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        List<Message> queries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Message query = newQuery("burst.test.", Type.TXT);
+            queries.add(query);
+            results.add(cache.resolve(query, q -> {
+                upstreamCalls.incrementAndGet();
+                return upstream;
+            }).toCompletableFuture());
+        }
+        upstream.complete(answer(queries.get(0)));
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(9, cache.getCoalescedCount());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(queries.get(i).getHeader().getID(), results.get(i).get().getHeader().getID());
+        }
+    }
+
+    private static Message answer(Message query) throws TextParseException {
+        Message response = new Message(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        response.addRecord(new TXTRecord(query.getQuestion().getName(), DClass.IN, 60L, "a"), Section.ANSWER);
+        return response;
+    }
+
+    static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
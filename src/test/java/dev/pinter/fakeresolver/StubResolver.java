@@ -0,0 +1,165 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Local resolver used in place of a real DNS server, counting the queries received. Also used by the benchmarks.
+ */
+class StubResolver implements Resolver {
+    private final LongAdder queries = new LongAdder();
+    private final Function<Message, Message> handler;
+
+    StubResolver(Function<Message, Message> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a resolver answering with the records matching the question, or NXDOMAIN.
+     *
+     * @param records records served
+     * @return the resolver
+     */
+    static StubResolver answering(Record... records) {
+        List<Record> list = Arrays.asList(records);
+        return new StubResolver(query -> {
+            Message response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            for (Record r : list) {
+                if (r.getName().equals(query.getQuestion().getName()) && r.getType() == query.getQuestion().getType()) {
+                    response.addRecord(r, Section.ANSWER);
+                }
+            }
+            response.getHeader().setRcode(response.getSection(Section.ANSWER).isEmpty() ? Rcode.NXDOMAIN : Rcode.NOERROR);
+            return response;
+        });
+    }
+
+    /**
+     * Creates a resolver answering every question with an A record, so the external path costs no network.
+     *
+     * @param address address answered
+     * @return the resolver
+     */
+    static StubResolver answeringAny(InetAddress address) {
+        return new StubResolver(query -> {
+            Message response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            response.addRecord(new ARecord(query.getQuestion().getName(), DClass.IN, 60L, address), Section.ANSWER);
+            return response;
+        });
+    }
+
+    /**
+     * Creates a query for the records of a name.
+     *
+     * @param name name queried
+     * @param type type queried
+     * @return the query
+     * @throws TextParseException if the name is not valid
+     */
+    static Message newQuery(String name, int type) throws TextParseException {
+        return Message.newQuery(Record.newRecord(Name.fromString(name), type, DClass.IN));
+    }
+
+    /**
+     * Creates a query for the addresses of a name.
+     *
+     * @param name name queried
+     * @return the query
+     * @throws TextParseException if the name is not valid
+     */
+    static Message newQuery(String name) throws TextParseException {
+        return newQuery(name, Type.A);
+    }
+
+    int getQueries() {
+        return (int) queries.sum();
+    }
+
+    @Override
+    public Message send(Message query) throws IOException {
+        queries.increment();
+        return handler.apply(query);
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query) {
+        try {
+            return CompletableFuture.completedFuture(send(query));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+        return sendAsync(query);
+    }
+
+    @Override
+    public void setPort(int port) {
+    }
+
+    @Override
+    public void setTCP(boolean flag) {
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag) {
+    }
+
+    @Override
+    public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key) {
+    }
+
+    @Override
+    public void setTimeout(Duration timeout) {
+    }
+
+    @Override
+    public String toString() {
+        return "StubResolver [queries=" + queries.sum() + "]";
+    }
+}
@@ -0,0 +1,200 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TtlDecayTest {
+    private FakeResolver fakeResolver;
+    private ResponseCacheTest.MutableClock clock;
+
+    @BeforeEach
+    public void setUp() {
+        fakeResolver = new FakeResolver(StubResolver.answering());
+        clock = new ResponseCacheTest.MutableClock();
+        fakeResolver.setClock(clock);
+    }
+
+    @Test
+    public void shouldDecreaseTtl() throws IOException {
+        fakeResolver.addRecord(newA("www.decay.test.", 300, "192.0.2.1"));
+        assertEquals(300, answer("www.decay.test.").getTTL());
+
+        clock.advance(Duration.ofSeconds(100));
+        Record r = answer("www.decay.test.");
+        assertEquals(200, r.getTTL());
+        assertEquals(Name.fromString("www.decay.test."), r.getName());
+        assertEquals(InetAddress.getByName("192.0.2.1"), ((ARecord) r).getAddress());
+    }
+
+    @Test
+    public void shouldExpireRRset() throws IOException {
+        fakeResolver.addRecord(newA("www.decay.test.", 60, "192.0.2.1"));
+        fakeResolver.addRecord(newA("www.decay.test.", 120, "192.0.2.2"));
+
+        clock.advance(Duration.ofSeconds(59));
+        Message response = fakeResolver.send(newQuery("www.decay.test."));
+        assertEquals(2, response.getSection(Section.ANSWER).size());
+
+        clock.advance(Duration.ofSeconds(1));
+        response = fakeResolver.send(newQuery("www.decay.test."));
+        assertEquals(Rcode.NXDOMAIN, response.getRcode());
+        assertEquals(0, fakeResolver.getRecords().size());
+    }
+
+    @Test
+    public void shouldExpireManyRRsetsAtOnce() throws TextParseException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            records.add(newA("host" + i + ".decay.test.", i % 2 == 0 ? 60 : 3600, "192.0.2.1"));
+        }
+        fakeResolver.addRecords(records);
+
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(0, fakeResolver.expireRecords());
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(5000, fakeResolver.expireRecords());
+        assertEquals(5000, fakeResolver.getRecords().size());
+        clock.advance(Duration.ofHours(1));
+        assertEquals(5000, fakeResolver.expireRecords());
+        assertEquals(0, fakeResolver.getRecords().size());
+    }
+
+    @Test
+    public void shouldApplyScheduledChange() throws IOException {
+        Record first = newA("www.decay.test.", 3600, "192.0.2.1");
+        Record second = newA("www.decay.test.", 3600, "192.0.2.2");
+        fakeResolver.addRecord(first);
+        fakeResolver.scheduleRecordChange(Duration.ofMinutes(5), List.of(first), List.of(second));
+
+        clock.advance(Duration.ofMinutes(4));
+        assertEquals(InetAddress.getByName("192.0.2.1"), ((ARecord) answer("www.decay.test.")).getAddress());
+
+        clock.advance(Duration.ofMinutes(1));
+        ARecord changed = (ARecord) answer("www.decay.test.");
+        assertEquals(InetAddress.getByName("192.0.2.2"), changed.getAddress());
+        // the RRset keeps aging from the first record
+        assertEquals(3300, changed.getTTL());
+    }
+
+    @Test
+    public void shouldRestartAgingWhenRRsetIsAddedBack() throws IOException {
+        Record record = newA("www.decay.test.", 60, "192.0.2.1");
+        fakeResolver.addRecord(record);
+        fakeResolver.scheduleRecordChange(Duration.ofSeconds(30), List.of(record), List.of());
+        fakeResolver.scheduleRecordChange(Duration.ofSeconds(40), List.of(), List.of(record));
+
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(1, fakeResolver.expireRecords());
+        assertEquals(0, fakeResolver.getRecords().size());
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(60, answer("www.decay.test.").getTTL());
+
+        // the timer of the removed RRset fires without removing the records added back
+        clock.advance(Duration.ofSeconds(20));
+        assertEquals(0, fakeResolver.expireRecords());
+        assertEquals(40, answer("www.decay.test.").getTTL());
+
+        clock.advance(Duration.ofSeconds(40));
+        assertEquals(1, fakeResolver.expireRecords());
+        assertEquals(0, fakeResolver.getRecords().size());
+    }
+
+    @Test
+    public void shouldRestartAgingWhenRecordsAreSet() throws IOException {
+        fakeResolver.setRecords(List.of(newA("www.decay.test.", 60, "192.0.2.1")));
+        clock.advance(Duration.ofSeconds(50));
+        fakeResolver.setRecords(List.of(newA("www.decay.test.", 60, "192.0.2.1"),
+                newA("new.decay.test.", 30, "192.0.2.2")));
+        assertEquals(60, answer("www.decay.test.").getTTL());
+
+        clock.advance(Duration.ofSeconds(20));
+        assertEquals(40, answer("www.decay.test.").getTTL());
+        assertEquals(10, answer("new.decay.test.").getTTL());
+
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(1, fakeResolver.expireRecords());
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(1, fakeResolver.expireRecords());
+        assertEquals(0, fakeResolver.getRecords().size());
+    }
+
+    @Test
+    public void shouldKeepTtlWithoutClock() throws IOException {
+        fakeResolver.setClock(null);
+        assertNull(fakeResolver.getClock());
+        fakeResolver.addRecord(newA("www.decay.test.", 60, "192.0.2.1"));
+        clock.advance(Duration.ofHours(1));
+        assertEquals(60, answer("www.decay.test.").getTTL());
+        assertThrows(IllegalStateException.class,
+                () -> fakeResolver.scheduleRecordChange(Duration.ofSeconds(1), List.of(), List.of()));
+    }
+
+    @Test
+    public void shouldJumpToNextTimer() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        long[] deadlines = {5, 70, 70, 5000, 300_000, 1L << 40};
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.schedule(deadlines[i], i);
+        }
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(4, expired::add);
+        assertEquals(List.of(), expired);
+        assertEquals(5, wheel.nextDeadline());
+
+        wheel.advance(5000, expired::add);
+        assertEquals(List.of(0, 1, 2, 3), expired);
+        assertEquals(2, wheel.size());
+
+        wheel.advance(1L << 41, expired::add);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), expired);
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+    }
+
+    private Record answer(String name) throws IOException {
+        return fakeResolver.send(newQuery(name)).getSection(Section.ANSWER).getFirst();
+    }
+
+    private static ARecord newA(String name, long ttl, String address) throws TextParseException {
+        try {
+            return new ARecord(Name.fromString(name), DClass.IN, ttl, InetAddress.getByName(address));
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
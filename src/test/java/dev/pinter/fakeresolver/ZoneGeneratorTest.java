@@ -0,0 +1,139 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZoneGeneratorTest {
+    @TempDir
+    Path tempDir;
+
+    private static List<String> generate(ZoneGenerator generator) {
+        List<String> records = new ArrayList<>();
+        generator.generate(batch -> batch.forEach(r -> records.add(r.toString())));
+        return records;
+    }
+
+    @Test
+    public void shouldBeReproducible() throws IOException {
+        ZoneGenerator generator = ZoneGenerator.forZone("gen.test").withRecords(20_000).withSeed(42);
+        List<String> records = generate(generator);
+        assertEquals(20_002, records.size());
+        assertEquals(records, generate(generator));
+        assertNotEquals(records, generate(generator.withSeed(43)));
+    }
+
+    @Test
+    public void shouldMixTypes() throws IOException {
+        Map<Integer, Integer> types = new HashMap<>();
+        long count = ZoneGenerator.forZone("gen.test").withRecords(6000).withTypes(Type.A, Type.A, Type.MX)
+                .generate(batch -> batch.forEach(r -> types.merge(r.getType(), 1, Integer::sum)));
+        assertEquals(6002, count);
+        assertEquals(Set.of(Type.SOA, Type.NS, Type.A, Type.MX), types.keySet());
+        assertTrue(types.get(Type.A) > 3600 && types.get(Type.A) < 4400, "types: " + types);
+        assertThrows(IllegalArgumentException.class, () -> ZoneGenerator.forZone("gen.test").withTypes(Type.NS));
+    }
+
+    @Test
+    public void shouldSkewZipfNames() throws IOException {
+        Map<Name, Integer> owners = new HashMap<>();
+        ZoneGenerator.forZone("gen.test").withRecords(50_000).withNames(10_000).withTypes(Type.A)
+                .withDistribution(ZoneGenerator.Distribution.ZIPF)
+                .generate(batch -> batch.forEach(r -> owners.merge(r.getName(), 1, Integer::sum)));
+        int top = owners.get(Name.fromString("host0.gen.test."));
+        int second = owners.get(Name.fromString("host1.gen.test."));
+        assertTrue(top > 4000 && top < 6500, "top: " + top);
+        assertTrue(second > top / 3 && second < top * 2 / 3, "second: " + second);
+        assertTrue(owners.size() < 10_000);
+    }
+
+    @Test
+    public void shouldNestDeepNames() throws IOException {
+        Set<Name> owners = new HashSet<>();
+        ZoneGenerator.forZone("gen.test").withRecords(5000).withNames(1000).withTypes(Type.TXT)
+                .withDistribution(ZoneGenerator.Distribution.DEEP).withBranching(2)
+                .generate(batch -> batch.forEach(r -> owners.add(r.getName())));
+        Name origin = Name.fromString("gen.test.");
+        int deepest = owners.stream().mapToInt(Name::labels).max().orElse(0);
+        assertEquals(origin.labels() + 9, deepest);
+        owners.remove(origin);
+        for (Name owner : owners) {
+            assertTrue(owner.subdomain(origin) && owner.getLabelString(0).matches("n[01]"), "owner: " + owner);
+        }
+    }
+
+    @Test
+    public void shouldLoadIntoResolver() throws IOException {
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.fromGenerator(ZoneGenerator.forZone("gen.test").withRecords(10_000).withTypes(Type.A));
+        assertEquals(10_002, fakeResolver.getRecords().size());
+
+        Message response = fakeResolver.send(Message.newQuery(
+                Record.newRecord(Name.fromString("host7.gen.test."), Type.A, DClass.IN)));
+        assertEquals(Rcode.NOERROR, response.getRcode());
+        assertTrue(response.getSection(Section.ANSWER).size() > 50);
+        Message nx = fakeResolver.send(Message.newQuery(
+                Record.newRecord(Name.fromString("missing.gen.test."), Type.A, DClass.IN)));
+        assertEquals(Rcode.NXDOMAIN, nx.getRcode());
+        assertEquals(Type.SOA, nx.getSection(Section.AUTHORITY).get(0).getType());
+    }
+
+    @Test
+    public void shouldWriteZoneFileAndSnapshot() throws IOException {
+        ZoneGenerator generator = ZoneGenerator.forZone("gen.test").withRecords(9000).withSeed(7);
+        Set<String> expected = new HashSet<>(generate(generator));
+
+        Path zoneFile = tempDir.resolve("gen.test.zone");
+        assertEquals(9002, generator.writeZoneFile(zoneFile));
+        FakeResolver fromZone = new FakeResolver(StubResolver.answering());
+        fromZone.fromZoneFile("gen.test", zoneFile);
+        assertEquals(expected, toStrings(fromZone.getRecords()));
+
+        Path snapshot = tempDir.resolve("gen.test.snapshot");
+        assertEquals(9002, generator.writeSnapshot(snapshot));
+        FakeResolver fromSnapshot = new FakeResolver(StubResolver.answering());
+        fromSnapshot.fromSnapshot(snapshot);
+        assertEquals(expected, toStrings(fromSnapshot.getRecords()));
+    }
+
+    private static Set<String> toStrings(List<Record> records) {
+        return records.stream().map(Record::toString).collect(Collectors.toSet());
+    }
+}
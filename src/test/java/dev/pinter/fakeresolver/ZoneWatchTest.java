@@ -0,0 +1,217 @@
+/*
+   Copyright 2025 Emerson Pinter
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package dev.pinter.fakeresolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static dev.pinter.fakeresolver.StubResolver.newQuery;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZoneWatchTest {
+    private static final String DOMAIN = "watch.test";
+
+    private static void writeZone(Path zoneFile, long serial, String... records) throws IOException {
+        StringBuilder sb = new StringBuilder("$TTL 30\n")
+                .append("@ IN SOA ns1 hostmaster ").append(serial).append(" 30 30 30 30\n");
+        for (String r : records) {
+            sb.append(r).append('\n');
+        }
+        Files.writeString(zoneFile, sb);
+    }
+
+    private static String address(FakeResolver fakeResolver, String name) throws IOException {
+        Message response = fakeResolver.send(newQuery(name));
+        if (response.getRcode() == Rcode.NXDOMAIN) {
+            return null;
+        }
+        return ((ARecord) response.getSection(Section.ANSWER).get(0)).getAddress().getHostAddress();
+    }
+
+    @Test
+    public void shouldApplyChangesOnReload(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1", "b IN A 192.0.2.2");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            assertEquals(1, watch.getSerial());
+            assertEquals("192.0.2.1", address(fakeResolver, "a.watch.test."));
+
+            writeZone(zoneFile, 2, "a IN A 192.0.2.10", "c IN A 192.0.2.3");
+            watch.reload();
+            assertFalse(watch.reload());
+            assertEquals(2, watch.getSerial());
+            assertEquals("192.0.2.10", address(fakeResolver, "a.watch.test."));
+            assertEquals(null, address(fakeResolver, "b.watch.test."));
+            assertEquals("192.0.2.3", address(fakeResolver, "c.watch.test."));
+            assertEquals(3, fakeResolver.getZoneRecords(DOMAIN).size());
+            assertEquals(0, fakeResolver.getRecords().size());
+        }
+    }
+
+    @Test
+    public void shouldApplyTtlChange(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            writeZone(zoneFile, 2, "a 300 IN A 192.0.2.1");
+            assertTrue(watch.reload());
+            assertEquals(2, watch.getSerial());
+            Message response = fakeResolver.send(newQuery("a.watch.test."));
+            assertEquals(300, response.getSection(Section.ANSWER).get(0).getTTL());
+            assertEquals(2, fakeResolver.getZoneRecords(DOMAIN).size());
+        }
+    }
+
+    @Test
+    public void shouldIgnoreOlderSerial(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 5, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            writeZone(zoneFile, 4, "a IN A 192.0.2.9");
+            assertFalse(watch.reload());
+            assertEquals(5, watch.getSerial());
+            assertEquals("192.0.2.1", address(fakeResolver, "a.watch.test."));
+        }
+    }
+
+    @Test
+    public void shouldIgnoreChangeWithoutSerialBump(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 3, "a IN A 192.0.2.1", "b IN A 192.0.2.2");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            // caught while being written: the SOA is there, the records that follow are not yet
+            writeZone(zoneFile, 3, "a IN A 192.0.2.1");
+            assertFalse(watch.reload());
+            assertEquals("192.0.2.2", address(fakeResolver, "b.watch.test."));
+
+            writeZone(zoneFile, 4, "a IN A 192.0.2.1");
+            assertTrue(watch.reload());
+            assertEquals(4, watch.getSerial());
+            assertEquals(null, address(fakeResolver, "b.watch.test."));
+            assertEquals(2, watch.getUpdates());
+        }
+    }
+
+    @Test
+    public void shouldKeepOtherRecords(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        fakeResolver.addRecord(new ARecord(Name.fromString("other.test."), DClass.IN, 60L,
+                InetAddress.getByName("192.0.2.100")));
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            writeZone(zoneFile, 2);
+            watch.reload();
+            assertEquals(null, address(fakeResolver, "a.watch.test."));
+            assertEquals("192.0.2.100", address(fakeResolver, "other.test."));
+        }
+    }
+
+    @Test
+    public void shouldOnlyRemoveWatchedRecords(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        Record same = new ARecord(Name.fromString("a.watch.test."), DClass.IN, 30L, InetAddress.getByName("192.0.2.1"));
+        fakeResolver.addRecord(same);
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            assertEquals(Set.of(Name.fromString("watch.test.")), fakeResolver.getZones());
+            writeZone(zoneFile, 2);
+            assertTrue(watch.reload());
+            assertEquals(null, address(fakeResolver, "a.watch.test."));
+            assertEquals(List.of(same), fakeResolver.getRecords());
+        }
+    }
+
+    @Test
+    public void shouldStopWhenZoneIsReplaced(@TempDir Path tempDir) throws IOException {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            fakeResolver.loadZone(DOMAIN, List.of(new ARecord(Name.fromString("b.watch.test."), DClass.IN, 30L,
+                    InetAddress.getByName("192.0.2.2"))));
+            writeZone(zoneFile, 2, "a IN A 192.0.2.10");
+            assertFalse(watch.reload());
+            assertEquals(null, address(fakeResolver, "a.watch.test."));
+            assertEquals("192.0.2.2", address(fakeResolver, "b.watch.test."));
+
+            assertTrue(fakeResolver.dropZone(DOMAIN));
+            assertTrue(fakeResolver.getZones().isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldReloadWhenFileChanges(@TempDir Path tempDir) throws Exception {
+        Path zoneFile = tempDir.resolve("watch.zone");
+        writeZone(zoneFile, 1, "a IN A 192.0.2.1");
+        FakeResolver fakeResolver = new FakeResolver(StubResolver.answering());
+        try (ZoneWatch watch = fakeResolver.watchZoneFile(DOMAIN, zoneFile)) {
+            writeZone(zoneFile, 2, "a IN A 192.0.2.2");
+            for (int i = 0; i < 200 && watch.getSerial() != 2; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, watch.getSerial());
+            assertEquals("192.0.2.2", address(fakeResolver, "a.watch.test."));
+        }
+    }
+
+    @Test
+    public void shouldComputeDiff() throws IOException {
+        Record a = new ARecord(Name.fromString("a.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.1"));
+        Record b = new ARecord(Name.fromString("b.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.2"));
+        Record c = new ARecord(Name.fromString("c.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.3"));
+        List<Record> removed = new ArrayList<>();
+        List<Record> added = new ArrayList<>();
+        ZoneWatch.diff(Arrays.asList(a, b, b), Arrays.asList(a, b, c), removed, added);
+        assertEquals(Arrays.asList(b), removed);
+        assertEquals(Arrays.asList(c), added);
+    }
+
+    @Test
+    public void shouldComputeDiffOfTtl() throws IOException {
+        Record a = new ARecord(Name.fromString("a.test."), DClass.IN, 60L, InetAddress.getByName("192.0.2.1"));
+        Record longer = new ARecord(Name.fromString("a.test."), DClass.IN, 300L, InetAddress.getByName("192.0.2.1"));
+        List<Record> removed = new ArrayList<>();
+        List<Record> added = new ArrayList<>();
+        ZoneWatch.diff(Arrays.asList(a), Arrays.asList(longer), removed, added);
+        assertEquals(60, removed.get(0).getTTL());
+        assertEquals(300, added.get(0).getTTL());
+    }
+}